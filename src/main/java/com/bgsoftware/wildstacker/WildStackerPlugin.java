@@ -12,6 +12,7 @@ import com.bgsoftware.wildstacker.handlers.UpgradesHandler;
 import com.bgsoftware.wildstacker.listeners.BarrelsListener;
 import com.bgsoftware.wildstacker.listeners.BucketsListener;
 import com.bgsoftware.wildstacker.listeners.ChunksListener;
+import com.bgsoftware.wildstacker.listeners.EntitiesIndexListener;
 import com.bgsoftware.wildstacker.listeners.EntitiesListener;
 import com.bgsoftware.wildstacker.listeners.ItemsListener;
 import com.bgsoftware.wildstacker.listeners.MenusListener;
@@ -98,6 +99,7 @@ public final class WildStackerPlugin extends JavaPlugin implements WildStacker {
             getServer().getPluginManager().registerEvents(new BarrelsListener(this), this);
         getServer().getPluginManager().registerEvents(new BucketsListener(this), this);
         getServer().getPluginManager().registerEvents(new ChunksListener(this), this);
+        getServer().getPluginManager().registerEvents(new EntitiesIndexListener(this), this);
         getServer().getPluginManager().registerEvents(new EntitiesListener(this), this);
         getServer().getPluginManager().registerEvents(new ItemsListener(this), this);
         getServer().getPluginManager().registerEvents(new MenusListener(), this);
@@ -150,6 +152,7 @@ public final class WildStackerPlugin extends JavaPlugin implements WildStacker {
 
             //We need to save the entire database
             systemManager.performCacheSave();
+            dataHandler.awaitStorageWrites();
 
             Executor.stopData();
 
@@ -0,0 +1,82 @@
+package com.bgsoftware.wildstacker.command.commands;
+
+import com.bgsoftware.wildstacker.Locale;
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.command.ICommand;
+import com.bgsoftware.wildstacker.utils.entity.EntityUtils;
+import com.bgsoftware.wildstacker.utils.entity.StackCheck;
+import com.bgsoftware.wildstacker.utils.entity.StackCheckPipeline;
+import com.bgsoftware.wildstacker.utils.legacy.EntityTypes;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public final class CommandChecks implements ICommand {
+
+    @Override
+    public String getLabel() {
+        return "checks";
+    }
+
+    @Override
+    public String getUsage() {
+        return "stacker checks <entity-type>";
+    }
+
+    @Override
+    public String getPermission() {
+        return "wildstacker.checks";
+    }
+
+    @Override
+    public String getDescription() {
+        return "See all the stack checks that are compared for an entity type.";
+    }
+
+    @Override
+    public int getMinArgs() {
+        return 2;
+    }
+
+    @Override
+    public int getMaxArgs() {
+        return 2;
+    }
+
+    @Override
+    public void perform(WildStackerPlugin plugin, CommandSender sender, String[] args) {
+        EntityTypes entityType;
+
+        try{
+            entityType = EntityTypes.fromName(args[1].toUpperCase());
+        }catch(IllegalArgumentException ex){
+            Locale.INVALID_ENTITY.send(sender, args[1]);
+            return;
+        }
+
+        List<StackCheck> stackChecks = StackCheckPipeline.getChecks(entityType);
+
+        StringBuilder message = new StringBuilder("&eStack Checks of " + EntityUtils.format(entityType.name()) +
+                " (" + stackChecks.size() + "):");
+
+        for(StackCheck stackCheck : stackChecks)
+            message.append("\n&e - ").append(stackCheck.name());
+
+        Locale.sendMessage(sender, message.toString());
+    }
+
+    @Override
+    public List<String> tabComplete(WildStackerPlugin plugin, CommandSender sender, String[] args) {
+        List<String> list = new ArrayList<>();
+
+        if(args.length == 2){
+            Arrays.stream(EntityTypes.values())
+                    .filter(entityType -> entityType.name().toLowerCase().startsWith(args[1].toLowerCase()))
+                    .forEach(entityType -> list.add(entityType.name().toLowerCase()));
+        }
+
+        return list;
+    }
+}
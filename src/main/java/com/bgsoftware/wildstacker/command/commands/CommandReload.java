@@ -6,6 +6,7 @@ import com.bgsoftware.wildstacker.command.ICommand;
 import com.bgsoftware.wildstacker.handlers.LootHandler;
 import com.bgsoftware.wildstacker.handlers.SettingsHandler;
 import com.bgsoftware.wildstacker.menu.EditorMenu;
+import com.bgsoftware.wildstacker.tasks.ChunksPrefetchTask;
 import com.bgsoftware.wildstacker.tasks.ItemsMerger;
 import com.bgsoftware.wildstacker.tasks.KillTask;
 import com.bgsoftware.wildstacker.tasks.StackTask;
@@ -56,6 +57,7 @@ public final class CommandReload implements ICommand {
             KillTask.start();
             StackTask.start();
             ItemsMerger.start();
+            ChunksPrefetchTask.start();
             EditorMenu.reloadConfiguration();
             Locale.RELOAD_SUCCESS.send(sender);
         });
@@ -3,6 +3,9 @@ package com.bgsoftware.wildstacker.command.commands;
 import com.bgsoftware.wildstacker.Locale;
 import com.bgsoftware.wildstacker.WildStackerPlugin;
 import com.bgsoftware.wildstacker.command.ICommand;
+import com.bgsoftware.wildstacker.database.Query;
+import com.bgsoftware.wildstacker.database.StatementHolder;
+import com.bgsoftware.wildstacker.tasks.StackBudgetTask;
 import org.bukkit.command.CommandSender;
 
 import java.util.List;
@@ -43,25 +46,28 @@ public final class CommandStats implements ICommand {
     @Override
     public void perform(WildStackerPlugin plugin, CommandSender sender, String[] args) {
         int entitiesAmount = plugin.getDataHandler().CACHED_ENTITIES.size(),
-                unloadedEntitiesAmount = plugin.getDataHandler().CACHED_ENTITIES_RAW.size(),
+                unloadedEntitiesAmount = plugin.getDataHandler().getUnloadedEntitiesAmount(),
                 itemsAmount = plugin.getDataHandler().CACHED_ITEMS.size(),
-                unloadedItemsAmount = plugin.getDataHandler().CACHED_ITEMS_RAW.size(),
+                unloadedItemsAmount = plugin.getDataHandler().getUnloadedItemsAmount(),
                 spawnersAmount = plugin.getDataHandler().CACHED_SPAWNERS.size(),
                 barrelsAmount = plugin.getDataHandler().CACHED_BARRELS.size();
 
-        int spawnersUnloadedAmount = 0, barrelsUnloadedAmount = 0;
-
-        for(Map<?, ?> map : plugin.getDataHandler().CACHED_SPAWNERS_RAW.values())
-            spawnersUnloadedAmount += map.size();
-
-        for(Map<?, ?> map : plugin.getDataHandler().CACHED_BARRELS_RAW.values())
-            barrelsUnloadedAmount += map.size();
+        int spawnersUnloadedAmount = plugin.getDataHandler().CACHED_SPAWNERS_RAW.size(),
+                barrelsUnloadedAmount = plugin.getDataHandler().CACHED_BARRELS_RAW.size();
 
         String message = "&eWildStacker Stats:" +
                 "\n&e - Stacked Entities: (Loaded: " + entitiesAmount + ", Unloaded: " + unloadedEntitiesAmount + ")" +
                 "\n&e - Stacked Items: (Loaded: " + itemsAmount + ", Unloaded: " + unloadedItemsAmount + ")" +
                 "\n&e - Stacked Spawners: (Loaded: " + spawnersAmount + ", Unloaded: " + spawnersUnloadedAmount + ")" +
-                "\n&e - Stacked Barrels: (Loaded: " + barrelsAmount + ", Unloaded: " + barrelsUnloadedAmount + ")";
+                "\n&e - Stacked Barrels: (Loaded: " + barrelsAmount + ", Unloaded: " + barrelsUnloadedAmount + ")" +
+                String.format("\n&e - Stacking Budget: (Used: %.2fms, Budget: %.2fms, Tick: %.2fms, Queued: %d)",
+                        StackBudgetTask.getAverageUsedTime(), StackBudgetTask.getCurrentBudget(),
+                        StackBudgetTask.getAverageTickTime(), StackBudgetTask.getQueuedTasks());
+
+        for(Map.Entry<Query, StatementHolder.FlushResult> entry : StatementHolder.getLastFlushes().entrySet()){
+            message += "\n&e - Last " + entry.getKey() + " Flush: (Rows: " + entry.getValue().getRows() +
+                    ", Took: " + entry.getValue().getTime() + "ms)";
+        }
 
         Locale.sendMessage(sender, message);
     }
@@ -0,0 +1,264 @@
+package com.bgsoftware.wildstacker.database;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.api.enums.SpawnCause;
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedBarrel;
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.objects.WUnloadedStackedBarrel;
+import com.bgsoftware.wildstacker.objects.WUnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.utils.GeneralUtils;
+import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
+import com.bgsoftware.wildstacker.utils.items.CachedItemSerializer;
+import com.bgsoftware.wildstacker.utils.pair.Pair;
+import com.google.common.collect.Maps;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Base for storages that keep all the spawners and barrels in memory, indexed by their chunks.
+// Implementations only need to persist the changes that are reported to them.
+abstract class CachedStorageBackend implements StorageBackend {
+
+    protected final Map<ChunkPosition, Map<Long, StoredObject>> spawners = new ConcurrentHashMap<>();
+    protected final Map<ChunkPosition, Map<Long, StoredObject>> barrels = new ConcurrentHashMap<>();
+
+    protected WildStackerPlugin plugin;
+
+    @Override
+    public void open(WildStackerPlugin plugin) throws Exception {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void loadEntities(Consumer<UUID> consumer) {
+        // Entities are saved by the data serializer.
+    }
+
+    @Override
+    public void loadItems(Consumer<UUID> consumer) {
+        // Items are saved by the data serializer.
+    }
+
+    @Override
+    public int countEntities() {
+        return 0;
+    }
+
+    @Override
+    public int countItems() {
+        return 0;
+    }
+
+    @Override
+    public Map<UUID, Pair<Integer, SpawnCause>> loadEntities(Collection<UUID> uuids) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<UUID, Integer> loadItems(Collection<UUID> uuids) {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public void loadSpawners(Consumer<UnloadedStackedSpawner> consumer) {
+        spawners.forEach((chunkPosition, chunkSpawners) -> {
+            World world = getWorld(chunkPosition, "spawners", spawners);
+            if(world != null)
+                chunkSpawners.values().forEach(storedObject -> consumer.accept(loadSpawner(world, storedObject)));
+        });
+    }
+
+    @Override
+    public void loadBarrels(Consumer<UnloadedStackedBarrel> consumer) {
+        barrels.forEach((chunkPosition, chunkBarrels) -> {
+            World world = getWorld(chunkPosition, "barrels", barrels);
+            if(world != null) {
+                chunkBarrels.values().forEach(storedObject -> {
+                    UnloadedStackedBarrel unloadedStackedBarrel = loadBarrel(world, storedObject);
+                    if(unloadedStackedBarrel != null)
+                        consumer.accept(unloadedStackedBarrel);
+                });
+            }
+        });
+    }
+
+    @Override
+    public Map<Location, UnloadedStackedSpawner> loadSpawners(ChunkPosition chunkPosition) {
+        Map<Location, UnloadedStackedSpawner> chunkSpawners = Maps.newConcurrentMap();
+        Map<Long, StoredObject> storedSpawners = spawners.get(chunkPosition);
+        World world = Bukkit.getWorld(chunkPosition.getWorld());
+
+        if(storedSpawners != null && world != null) {
+            storedSpawners.values().forEach(storedObject -> {
+                UnloadedStackedSpawner unloadedStackedSpawner = loadSpawner(world, storedObject);
+                chunkSpawners.put(unloadedStackedSpawner.getLocation(), unloadedStackedSpawner);
+            });
+        }
+
+        return chunkSpawners;
+    }
+
+    @Override
+    public Map<Location, UnloadedStackedBarrel> loadBarrels(ChunkPosition chunkPosition) {
+        Map<Location, UnloadedStackedBarrel> chunkBarrels = Maps.newConcurrentMap();
+        Map<Long, StoredObject> storedBarrels = barrels.get(chunkPosition);
+        World world = Bukkit.getWorld(chunkPosition.getWorld());
+
+        if(storedBarrels != null && world != null) {
+            storedBarrels.values().forEach(storedObject -> {
+                UnloadedStackedBarrel unloadedStackedBarrel = loadBarrel(world, storedObject);
+                if(unloadedStackedBarrel != null)
+                    chunkBarrels.put(unloadedStackedBarrel.getLocation(), unloadedStackedBarrel);
+            });
+        }
+
+        return chunkBarrels;
+    }
+
+    @Override
+    public void saveSpawners(Collection<UnloadedStackedSpawner> spawners) {
+        if(spawners.isEmpty())
+            return;
+
+        List<StoredObject> savedSpawners = new ArrayList<>(spawners.size());
+
+        for(UnloadedStackedSpawner unloadedStackedSpawner : spawners){
+            StoredObject storedObject = new StoredObject(unloadedStackedSpawner.getLocation(), unloadedStackedSpawner.getStackAmount(),
+                    ((WUnloadedStackedSpawner) unloadedStackedSpawner).getUpgradeId(), null);
+            put(this.spawners, storedObject);
+            savedSpawners.add(storedObject);
+        }
+
+        onSpawnersUpdate(savedSpawners, Collections.emptyList());
+    }
+
+    @Override
+    public void saveBarrels(Collection<UnloadedStackedBarrel> barrels) {
+        if(barrels.isEmpty())
+            return;
+
+        List<StoredObject> savedBarrels = new ArrayList<>(barrels.size());
+
+        for(UnloadedStackedBarrel unloadedStackedBarrel : barrels){
+            StoredObject storedObject = new StoredObject(unloadedStackedBarrel.getLocation(), unloadedStackedBarrel.getStackAmount(),
+                    0, CachedItemSerializer.serialize(unloadedStackedBarrel.getBarrelItem(1)));
+            put(this.barrels, storedObject);
+            savedBarrels.add(storedObject);
+        }
+
+        onBarrelsUpdate(savedBarrels, Collections.emptyList());
+    }
+
+    @Override
+    public void deleteSpawner(Location location) {
+        StoredObject storedObject = remove(spawners, location);
+        if(storedObject != null)
+            onSpawnersUpdate(Collections.emptyList(), Collections.singletonList(storedObject));
+    }
+
+    @Override
+    public void deleteBarrel(Location location) {
+        StoredObject storedObject = remove(barrels, location);
+        if(storedObject != null)
+            onBarrelsUpdate(Collections.emptyList(), Collections.singletonList(storedObject));
+    }
+
+    @Override
+    public void deleteEntities(Collection<UUID> uuids) {
+        // Entities are saved by the data serializer.
+    }
+
+    @Override
+    public void deleteItems(Collection<UUID> uuids) {
+        // Items are saved by the data serializer.
+    }
+
+    protected abstract void onSpawnersUpdate(Collection<StoredObject> saved, Collection<StoredObject> deleted);
+
+    protected abstract void onBarrelsUpdate(Collection<StoredObject> saved, Collection<StoredObject> deleted);
+
+    protected static void put(Map<ChunkPosition, Map<Long, StoredObject>> objects, StoredObject storedObject){
+        objects.computeIfAbsent(new ChunkPosition(storedObject.world, storedObject.x >> 4, storedObject.z >> 4),
+                s -> new ConcurrentHashMap<>()).put(GeneralUtils.getBlockKey(storedObject.x, storedObject.y, storedObject.z), storedObject);
+    }
+
+    protected static StoredObject remove(Map<ChunkPosition, Map<Long, StoredObject>> objects, String world, int x, int y, int z){
+        Map<Long, StoredObject> chunkObjects = objects.get(new ChunkPosition(world, x >> 4, z >> 4));
+        return chunkObjects == null ? null : chunkObjects.remove(GeneralUtils.getBlockKey(x, y, z));
+    }
+
+    private static StoredObject remove(Map<ChunkPosition, Map<Long, StoredObject>> objects, Location location){
+        return remove(objects, location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    private World getWorld(ChunkPosition chunkPosition, String type, Map<ChunkPosition, Map<Long, StoredObject>> objects){
+        World world = Bukkit.getWorld(chunkPosition.getWorld());
+
+        if(world == null) {
+            WildStackerPlugin.log("Couldn't load " + type + " of world " + chunkPosition.getWorld() + ": Null world.");
+
+            if(plugin.getSettings().deleteInvalidWorlds) {
+                Map<Long, StoredObject> chunkObjects = objects.remove(chunkPosition);
+                if(chunkObjects != null) {
+                    if (objects == spawners)
+                        onSpawnersUpdate(Collections.emptyList(), chunkObjects.values());
+                    else
+                        onBarrelsUpdate(Collections.emptyList(), chunkObjects.values());
+                }
+            }
+        }
+
+        return world;
+    }
+
+    private UnloadedStackedSpawner loadSpawner(World world, StoredObject storedObject){
+        return new WUnloadedStackedSpawner(new Location(world, storedObject.x, storedObject.y, storedObject.z),
+                storedObject.stackAmount, storedObject.upgradeId);
+    }
+
+    private UnloadedStackedBarrel loadBarrel(World world, StoredObject storedObject){
+        Location blockLocation = new Location(world, storedObject.x, storedObject.y, storedObject.z);
+        try {
+            ItemStack barrelItem = CachedItemSerializer.deserialize(storedObject.item);
+            return new WUnloadedStackedBarrel(blockLocation, storedObject.stackAmount, barrelItem);
+        } catch (Exception ex) {
+            WildStackerPlugin.log("Couldn't load barrel: " + blockLocation);
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    protected static final class StoredObject {
+
+        final String world;
+        final int x, y, z, stackAmount, upgradeId;
+        final String item;
+
+        StoredObject(Location location, int stackAmount, int upgradeId, String item){
+            this(location.getWorld().getName(), location.getBlockX(), location.getBlockY(), location.getBlockZ(),
+                    stackAmount, upgradeId, item);
+        }
+
+        StoredObject(String world, int x, int y, int z, int stackAmount, int upgradeId, String item){
+            this.world = world;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.stackAmount = stackAmount;
+            this.upgradeId = upgradeId;
+            this.item = item == null ? "" : item;
+        }
+
+    }
+
+}
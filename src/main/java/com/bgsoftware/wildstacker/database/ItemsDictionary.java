@@ -0,0 +1,85 @@
+package com.bgsoftware.wildstacker.database;
+
+import com.bgsoftware.wildstacker.utils.items.CachedItemSerializer;
+import org.bukkit.inventory.ItemStack;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class ItemsDictionary {
+
+    // Items of barrels are saved once in the database as blobs, and barrels reference them by their ids.
+    private static final Map<String, Integer> itemIds = new ConcurrentHashMap<>();
+    private static final Map<Integer, String> serializedItems = new ConcurrentHashMap<>();
+    private static int lastItemId = 0;
+
+    private ItemsDictionary(){
+
+    }
+
+    public static synchronized void load(){
+        // Items are registered again from the table, so ids that were rolled back are not used anymore.
+        itemIds.clear();
+        serializedItems.clear();
+        lastItemId = 0;
+
+        SQLHelper.executeUpdate("CREATE TABLE IF NOT EXISTS barrel_items (id INTEGER PRIMARY KEY, data BLOB);");
+
+        SQLHelper.executeQuery("SELECT * FROM barrel_items;", resultSet -> {
+            while (resultSet.next())
+                register(resultSet.getInt("id"), fromBytes(resultSet.getBytes("data")));
+        });
+    }
+
+    public static int getId(ItemStack itemStack){
+        return itemStack == null ? 0 : getId(CachedItemSerializer.serialize(itemStack));
+    }
+
+    public static int getId(String serializedItem){
+        if(serializedItem == null || serializedItem.isEmpty())
+            return 0;
+
+        Integer itemId = itemIds.get(serializedItem);
+        return itemId != null ? itemId : createId(serializedItem);
+    }
+
+    public static ItemStack getItem(int itemId){
+        String serializedItem = serializedItems.get(itemId);
+        return serializedItem == null ? null : CachedItemSerializer.deserialize(serializedItem);
+    }
+
+    private static synchronized int createId(String serializedItem){
+        Integer itemId = itemIds.get(serializedItem);
+
+        if(itemId != null)
+            return itemId;
+
+        int newItemId = lastItemId + 1;
+
+        Query.BARREL_ITEM_INSERT.getStatementHolder()
+                .setInt(newItemId)
+                .setBytes(toBytes(serializedItem))
+                .execute(true);
+
+        register(newItemId, serializedItem);
+
+        return newItemId;
+    }
+
+    // Serialized items are the bytes of the items in base 32, so the bytes themselves are saved instead.
+    static byte[] toBytes(String serializedItem){
+        return new BigInteger(serializedItem, 32).toByteArray();
+    }
+
+    static String fromBytes(byte[] data){
+        return new BigInteger(1, data).toString(32);
+    }
+
+    private static synchronized void register(int itemId, String serializedItem){
+        serializedItems.put(itemId, serializedItem);
+        itemIds.put(serializedItem, itemId);
+        lastItemId = Math.max(lastItemId, itemId);
+    }
+
+}
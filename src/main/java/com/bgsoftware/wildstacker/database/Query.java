@@ -2,11 +2,19 @@ package com.bgsoftware.wildstacker.database;
 
 public enum Query {
 
-    SPAWNER_INSERT("REPLACE INTO spawners VALUES(?, ?, ?);", 3),
-    SPAWNER_DELETE("DELETE FROM spawners WHERE location=?;", 1),
+    SPAWNER_INSERT("REPLACE INTO spawners (world, blockKey, x, y, z, chunkX, chunkZ, stackAmount, upgrade) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?);", 9),
+    SPAWNER_DELETE("DELETE FROM spawners WHERE world=? AND blockKey=?;", 2),
 
-    BARREL_INSERT("REPLACE INTO barrels VALUES(?, ?, ?);", 3),
-    BARREL_DELETE("DELETE FROM barrels WHERE location=?;", 1);
+    BARREL_INSERT("REPLACE INTO barrels (world, blockKey, x, y, z, chunkX, chunkZ, stackAmount, itemId) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?);", 9),
+    BARREL_DELETE("DELETE FROM barrels WHERE world=? AND blockKey=?;", 2),
+
+    BARREL_ITEM_INSERT("INSERT INTO barrel_items (id, data) VALUES(?, ?);", 2),
+
+    ENTITY_DELETE("DELETE FROM entities WHERE uuid=?;", 1),
+
+    ITEM_DELETE("DELETE FROM items WHERE uuid=?;", 1),
+
+    WORLD_INSERT("INSERT INTO worlds (id, name) VALUES(?, ?);", 2);
 
     private final String query;
     private final int parametersCount;
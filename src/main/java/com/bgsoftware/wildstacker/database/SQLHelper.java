@@ -8,6 +8,8 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
@@ -15,8 +17,24 @@ public final class SQLHelper {
 
     private static final CompletableFuture<Void> ready = new CompletableFuture<>();
     private static final Object mutex = new Object();
-
+    private static final Object readMutex = new Object();
+
+    private static final String[] CONNECTION_PRAGMAS = new String[] {
+            "PRAGMA journal_mode=WAL;",
+            "PRAGMA synchronous=NORMAL;",
+            "PRAGMA temp_store=MEMORY;",
+            "PRAGMA cache_size=-16000;",
+            "PRAGMA busy_timeout=5000;"
+    };
+
+    // Statements of the Query enum are prepared once on the writer connection and reused.
+    // Access to them is guarded by the writer mutex, like any other access to the writer connection.
+    private static final EnumMap<Query, PreparedStatement> cachedStatements = new EnumMap<>(Query.class);
+
+    // The writer connection is used for all updates, while the reader connection is used for queries.
+    // As the database runs in WAL mode, reads don't have to wait for writes to be committed, and vice versa.
     private static Connection conn;
+    private static Connection readConn;
 
     private SQLHelper(){
 
@@ -36,14 +54,20 @@ public final class SQLHelper {
 
     public static void createConnection(WildStackerPlugin plugin) throws SQLException {
         File file = new File(plugin.getDataFolder(), "database.db");
-        conn = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath().replace("\\", "/"));
+        String sqlURL = "jdbc:sqlite:" + file.getAbsolutePath().replace("\\", "/");
+
+        conn = DriverManager.getConnection(sqlURL);
+        applyPragmas(conn);
+
+        readConn = DriverManager.getConnection(sqlURL);
+        applyPragmas(readConn);
 
         ready.complete(null);
     }
 
     public static void executeUpdate(String statement){
         executeUpdate(statement, ex -> {
-            System.out.println(statement);
+            WildStackerPlugin.log("&cFailed to execute query " + statement);
             ex.printStackTrace();
         });
     }
@@ -52,34 +76,38 @@ public final class SQLHelper {
         if(conn == null)
             return;
 
-        PreparedStatement preparedStatement = null;
-        try{
-            preparedStatement = conn.prepareStatement(statement);
-            preparedStatement.executeUpdate();
-        }catch(SQLException ex){
-            onError.accept(ex);
-        } finally {
-            close(preparedStatement);
+        synchronized (mutex) {
+            PreparedStatement preparedStatement = null;
+            try {
+                preparedStatement = conn.prepareStatement(statement);
+                preparedStatement.executeUpdate();
+            } catch (SQLException ex) {
+                onError.accept(ex);
+            } finally {
+                close(preparedStatement);
+            }
         }
     }
 
     public static boolean doesConditionExist(String statement){
-        if(conn == null)
+        if(readConn == null)
             return false;
 
         boolean ret = false;
 
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
-        try{
-            preparedStatement = conn.prepareStatement(statement);
-            resultSet = preparedStatement.executeQuery();
-            ret = resultSet.next();
-        }catch(SQLException ex){
-            ex.printStackTrace();
-        } finally {
-            close(resultSet);
-            close(preparedStatement);
+        synchronized (readMutex) {
+            PreparedStatement preparedStatement = null;
+            ResultSet resultSet = null;
+            try {
+                preparedStatement = readConn.prepareStatement(statement);
+                resultSet = preparedStatement.executeQuery();
+                ret = resultSet.next();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            } finally {
+                close(resultSet);
+                close(preparedStatement);
+            }
         }
 
         return ret;
@@ -90,41 +118,120 @@ public final class SQLHelper {
     }
 
     public static void executeQuery(String statement, QueryConsumer<ResultSet> callback, Consumer<SQLException> onError){
-        if(conn == null)
+        if(readConn == null)
             return;
 
-        PreparedStatement preparedStatement = null;
-        ResultSet resultSet = null;
+        synchronized (readMutex) {
+            PreparedStatement preparedStatement = null;
+            ResultSet resultSet = null;
 
-        try{
-            preparedStatement = conn.prepareStatement(statement);
-            resultSet = preparedStatement.executeQuery();
-            callback.accept(resultSet);
-        }catch(SQLException ex){
-            onError.accept(ex);
-        } finally {
-            close(resultSet);
-            close(preparedStatement);
+            try {
+                preparedStatement = readConn.prepareStatement(statement);
+                resultSet = preparedStatement.executeQuery();
+                callback.accept(resultSet);
+            } catch (SQLException ex) {
+                onError.accept(ex);
+            } finally {
+                close(resultSet);
+                close(preparedStatement);
+            }
+        }
+    }
+
+    public static void executePreparedQuery(String statement, QueryConsumer<PreparedStatement> parameters, QueryConsumer<ResultSet> callback){
+        if(readConn == null)
+            return;
+
+        synchronized (readMutex) {
+            PreparedStatement preparedStatement = null;
+            ResultSet resultSet = null;
+
+            try {
+                preparedStatement = readConn.prepareStatement(statement);
+                parameters.accept(preparedStatement);
+                resultSet = preparedStatement.executeQuery();
+                callback.accept(resultSet);
+            } catch (SQLException ex) {
+                WildStackerPlugin.log("&cFailed to execute query " + statement);
+                ex.printStackTrace();
+            } finally {
+                close(resultSet);
+                close(preparedStatement);
+            }
+        }
+    }
+
+    // Runs all the statements of the consumer on the writer connection as one transaction.
+    // Nothing is applied if any of them fails, and the failure is thrown back to the caller.
+    public static void executeTransaction(QueryConsumer<Connection> transaction) throws SQLException {
+        if(conn == null)
+            throw new SQLException("The database is not connected.");
+
+        synchronized (mutex) {
+            conn.setAutoCommit(false);
+
+            try {
+                transaction.accept(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException ex) {
+                rollback();
+                throw ex;
+            } finally {
+                setAutoCommit(true);
+            }
         }
     }
 
     public static void close(){
-        try {
-            conn.close();
-        }catch (SQLException ex){
-            ex.printStackTrace();
+        synchronized (mutex) {
+            cachedStatements.values().forEach(SQLHelper::close);
+            cachedStatements.clear();
+
+            try {
+                conn.close();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        synchronized (readMutex) {
+            try {
+                readConn.close();
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
         }
     }
 
-    public static void buildStatement(String query, QueryConsumer<PreparedStatement> consumer, Consumer<SQLException> failure){
+    // Statements of queries are taken from the cache, and are not closed after the consumer is called.
+    // Must be called while holding the mutex of the writer connection.
+    public static void buildStatement(Query query, QueryConsumer<PreparedStatement> consumer, Consumer<SQLException> failure){
         PreparedStatement preparedStatement = null;
         try{
-            preparedStatement = conn.prepareStatement(query);
+            preparedStatement = cachedStatements.get(query);
+
+            if(preparedStatement == null || preparedStatement.isClosed()) {
+                preparedStatement = conn.prepareStatement(query.getStatement());
+                cachedStatements.put(query, preparedStatement);
+            }
+
             consumer.accept(preparedStatement);
         }catch(SQLException ex){
             failure.accept(ex);
         } finally {
-          close(preparedStatement);
+            if(preparedStatement != null) {
+                try {
+                    preparedStatement.clearParameters();
+                    preparedStatement.clearBatch();
+                } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    private static void applyPragmas(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement()){
+            for(String pragma : CONNECTION_PRAGMAS)
+                statement.execute(pragma);
         }
     }
 
@@ -149,6 +256,14 @@ public final class SQLHelper {
         conn.commit();
     }
 
+    public static void rollback(){
+        try {
+            conn.rollback();
+        }catch(SQLException ex){
+            ex.printStackTrace();
+        }
+    }
+
     public interface QueryConsumer<T>{
 
         void accept(T value) throws SQLException;
@@ -1,10 +1,13 @@
 package com.bgsoftware.wildstacker.database;
 
 import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.utils.GeneralUtils;
+import com.bgsoftware.wildstacker.utils.items.CachedItemSerializer;
 import com.bgsoftware.wildstacker.utils.threads.Executor;
 import org.bukkit.Location;
 import org.bukkit.inventory.ItemStack;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -13,10 +16,10 @@ import java.util.Map;
 
 public final class StatementHolder {
 
-    private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
-
     private static final EnumMap<Query, IncreasableInteger> queryCalls = new EnumMap<>(Query.class);
 
+    private static final EnumMap<Query, FlushResult> lastFlushes = new EnumMap<>(Query.class);
+
     private final List<Map<Integer, Object>> batches = new ArrayList<>();
 
     private final String query;
@@ -41,6 +44,11 @@ public final class StatementHolder {
         return this;
     }
 
+    public StatementHolder setLong(long value){
+        values.put(currentIndex++, value);
+        return this;
+    }
+
     public StatementHolder setShort(short value){
         values.put(currentIndex++, value);
         return this;
@@ -56,14 +64,28 @@ public final class StatementHolder {
         return this;
     }
 
+    public StatementHolder setBytes(byte[] value){
+        values.put(currentIndex++, value);
+        return this;
+    }
+
     public StatementHolder setItemStack(ItemStack itemStack){
-        values.put(currentIndex++, itemStack == null ? "" : plugin.getNMSAdapter().serialize(itemStack));
+        values.put(currentIndex++, CachedItemSerializer.serialize(itemStack));
         return this;
     }
 
     public StatementHolder setLocation(Location loc){
-        values.put(currentIndex++, loc == null ? "" : loc.getWorld().getName() + "," + loc.getBlockX() + "," +
-                loc.getBlockY() + "," + loc.getBlockZ());
+        values.put(currentIndex++, loc == null ? null : WorldsDictionary.getId(loc.getWorld().getName()));
+        values.put(currentIndex++, loc == null ? null : GeneralUtils.getBlockKey(loc));
+        return this;
+    }
+
+    public StatementHolder setBlockPosition(Location loc){
+        values.put(currentIndex++, loc.getBlockX());
+        values.put(currentIndex++, loc.getBlockY());
+        values.put(currentIndex++, loc.getBlockZ());
+        values.put(currentIndex++, loc.getBlockX() >> 4);
+        values.put(currentIndex++, loc.getBlockZ() >> 4);
         return this;
     }
 
@@ -86,47 +108,70 @@ public final class StatementHolder {
         SQLHelper.waitForConnection();
 
         try {
-            StringHolder errorQuery = new StringHolder(query);
-
             synchronized (SQLHelper.getMutex()) {
                 queryCalls.computeIfAbsent(queryEnum, q -> new IncreasableInteger()).increase();
-                SQLHelper.buildStatement(query, preparedStatement -> {
+                SQLHelper.buildStatement(queryEnum, preparedStatement -> {
                     if (isBatch) {
-                        if (batches.isEmpty()) {
-                            isBatch = false;
+                        if (batches.isEmpty())
                             return;
-                        }
+
+                        long startTime = System.currentTimeMillis();
 
                         SQLHelper.setAutoCommit(false);
 
-                        for (Map<Integer, Object> values : batches) {
-                            for (Map.Entry<Integer, Object> entry : values.entrySet()) {
-                                preparedStatement.setObject(entry.getKey(), entry.getValue());
-                                errorQuery.value = errorQuery.value.replaceFirst("\\?", entry.getValue() + "");
+                        try {
+                            for (Map<Integer, Object> values : batches) {
+                                for (Map.Entry<Integer, Object> entry : values.entrySet())
+                                    preparedStatement.setObject(entry.getKey(), entry.getValue());
+                                preparedStatement.addBatch();
                             }
-                            preparedStatement.addBatch();
-                        }
 
-                        preparedStatement.executeBatch();
-                        try {
+                            preparedStatement.executeBatch();
                             SQLHelper.commit();
-                        }catch(Throwable ignored){}
+                        }catch (SQLException ex){
+                            SQLHelper.rollback();
+                            throw ex;
+                        } finally {
+                            SQLHelper.setAutoCommit(true);
+                        }
 
-                        SQLHelper.setAutoCommit(true);
+                        synchronized (lastFlushes) {
+                            lastFlushes.put(queryEnum, new FlushResult(batches.size(), System.currentTimeMillis() - startTime));
+                        }
                     } else {
-                        for (Map.Entry<Integer, Object> entry : values.entrySet()) {
+                        for (Map.Entry<Integer, Object> entry : values.entrySet())
                             preparedStatement.setObject(entry.getKey(), entry.getValue());
-                            errorQuery.value = errorQuery.value.replaceFirst("\\?", entry.getValue() + "");
-                        }
                         preparedStatement.executeUpdate();
                     }
                 }, ex -> {
-                    WildStackerPlugin.log("&cFailed to execute query " + errorQuery);
+                    WildStackerPlugin.log("&cFailed to execute query " + buildErrorQuery());
                     ex.printStackTrace();
                 });
             }
         } finally {
+            // The holder can be reused for another statement or batch after it was executed.
             values.clear();
+            batches.clear();
+            currentIndex = 1;
+            isBatch = false;
+        }
+    }
+
+    public int getBatchSize(){
+        return batches.size();
+    }
+
+    private String buildErrorQuery(){
+        // Building the query string is expensive, therefore it's only done when the query actually failed.
+        String errorQuery = query;
+        for(Object value : (isBatch && !batches.isEmpty() ? batches.get(batches.size() - 1) : values).values())
+            errorQuery = errorQuery.replaceFirst("\\?", value + "");
+        return isBatch ? errorQuery + " (batch of " + batches.size() + ")" : errorQuery;
+    }
+
+    public static EnumMap<Query, FlushResult> getLastFlushes() {
+        synchronized (lastFlushes) {
+            return new EnumMap<>(lastFlushes);
         }
     }
 
@@ -134,18 +179,24 @@ public final class StatementHolder {
         return queryCalls;
     }
 
-    private static class StringHolder{
+    public static final class FlushResult{
 
-        private String value;
+        private final int rows;
+        private final long time;
 
-        StringHolder(String value){
-            this.value = value;
+        FlushResult(int rows, long time){
+            this.rows = rows;
+            this.time = time;
         }
 
-        @Override
-        public String toString() {
-            return value;
+        public int getRows() {
+            return rows;
+        }
+
+        public long getTime() {
+            return time;
         }
+
     }
 
     public static final class IncreasableInteger{
@@ -0,0 +1,91 @@
+package com.bgsoftware.wildstacker.database;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.api.enums.SpawnCause;
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedBarrel;
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
+import com.bgsoftware.wildstacker.utils.pair.Pair;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public interface StorageBackend {
+
+    String getName();
+
+    void open(WildStackerPlugin plugin) throws Exception;
+
+    void close();
+
+    // Storages that are loaded by chunks can only load objects of chunks that are currently loaded.
+    default boolean isLoadedByChunks(){
+        return false;
+    }
+
+    // Storages that are loaded by chunks may still have older data of a chunk in another database.
+    // That data is read by loadLegacyData on the database threads, before the objects of the chunk are loaded.
+    default boolean hasLegacyData(ChunkPosition chunkPosition){
+        return false;
+    }
+
+    default void loadLegacyData(ChunkPosition chunkPosition){
+
+    }
+
+    /*
+     * Loading methods, called from the database threads.
+     * The consumers of the load methods may be called from multiple threads at the same time.
+     */
+
+    // Entities and items are only listed by their uuids, their data is looked up when they are loaded into the world.
+    void loadEntities(Consumer<UUID> consumer);
+
+    void loadItems(Consumer<UUID> consumer);
+
+    int countEntities();
+
+    int countItems();
+
+    // Lookups of the entities and items of a chunk, all of them are looked up together when the chunk is loaded.
+    // The records are kept until their data is applied, see deleteEntities and deleteItems.
+    Map<UUID, Pair<Integer, SpawnCause>> loadEntities(Collection<UUID> uuids);
+
+    Map<UUID, Integer> loadItems(Collection<UUID> uuids);
+
+    void loadSpawners(Consumer<UnloadedStackedSpawner> consumer);
+
+    void loadBarrels(Consumer<UnloadedStackedBarrel> consumer);
+
+    Map<Location, UnloadedStackedSpawner> loadSpawners(ChunkPosition chunkPosition);
+
+    Map<Location, UnloadedStackedBarrel> loadBarrels(ChunkPosition chunkPosition);
+
+    /*
+     * Saving methods, may be called from any thread.
+     * All the objects that are given to the method are saved as one batch.
+     */
+
+    void saveSpawners(Collection<UnloadedStackedSpawner> spawners);
+
+    void saveBarrels(Collection<UnloadedStackedBarrel> barrels);
+
+    void deleteSpawner(Location location);
+
+    void deleteBarrel(Location location);
+
+    // Called once the records of entities and items were applied, as their data is saved by the data serializer from now on.
+    void deleteEntities(Collection<UUID> uuids);
+
+    void deleteItems(Collection<UUID> uuids);
+
+    // Called from the main thread before the objects of the chunk are unloaded.
+    default void saveChunk(Chunk chunk){
+
+    }
+
+}
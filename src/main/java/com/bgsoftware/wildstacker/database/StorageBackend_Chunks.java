@@ -0,0 +1,404 @@
+package com.bgsoftware.wildstacker.database;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.api.enums.SpawnCause;
+import com.bgsoftware.wildstacker.api.objects.StackedBarrel;
+import com.bgsoftware.wildstacker.api.objects.StackedSpawner;
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedBarrel;
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.objects.WStackedSpawner;
+import com.bgsoftware.wildstacker.objects.WUnloadedStackedBarrel;
+import com.bgsoftware.wildstacker.objects.WUnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.utils.GeneralUtils;
+import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
+import com.bgsoftware.wildstacker.utils.items.CachedItemSerializer;
+import com.bgsoftware.wildstacker.utils.pair.Pair;
+import com.bgsoftware.wildstacker.utils.threads.Executor;
+import com.google.common.collect.Maps;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Saves spawners and barrels inside the persistent data of their chunks, so they are loaded and saved with the chunks.
+// Data of chunks can only be accessed from the main thread, therefore all the reads and writes are done there.
+// Rows of the old database are moved into the chunks when the chunks are loaded for the first time.
+// The rows are read on the database threads by loadLegacyData, and only written into the chunks on the main thread.
+public final class StorageBackend_Chunks implements StorageBackend {
+
+    private static final String SPAWNERS_KEY = "spawners", BARRELS_KEY = "barrels";
+
+    private final Set<ChunkPosition> spawnersToMigrate = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final Set<ChunkPosition> barrelsToMigrate = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // Rows of the old database that were read, and are waiting for their chunks to be loaded.
+    private final Map<ChunkPosition, Map<Location, UnloadedStackedSpawner>> legacySpawners = new ConcurrentHashMap<>();
+    private final Map<ChunkPosition, Map<Location, UnloadedStackedBarrel>> legacyBarrels = new ConcurrentHashMap<>();
+
+    // Objects that were removed while their chunks were unloaded, and should be removed from the chunks when they are loaded.
+    private final Map<ChunkPosition, Set<Long>> spawnersToDelete = new ConcurrentHashMap<>();
+    private final Map<ChunkPosition, Set<Long>> barrelsToDelete = new ConcurrentHashMap<>();
+
+    private WildStackerPlugin plugin;
+    private StorageBackend_SQLite legacyStorage;
+
+    @Override
+    public String getName() {
+        return "Chunks";
+    }
+
+    @Override
+    public void open(WildStackerPlugin plugin) throws Exception {
+        this.plugin = plugin;
+
+        if(!new File(plugin.getDataFolder(), "database.db").exists())
+            return;
+
+        legacyStorage = new StorageBackend_SQLite();
+        legacyStorage.open(plugin);
+
+        collectChunksToMigrate("spawners", spawnersToMigrate);
+        collectChunksToMigrate("barrels", barrelsToMigrate);
+
+        if(!spawnersToMigrate.isEmpty() || !barrelsToMigrate.isEmpty()) {
+            WildStackerPlugin.log("Found " + spawnersToMigrate.size() + " chunks with spawners and " + barrelsToMigrate.size() +
+                    " chunks with barrels in the database, they will be moved into the chunks when loaded.");
+        }
+    }
+
+    @Override
+    public void close() {
+        if(legacyStorage != null)
+            legacyStorage.close();
+    }
+
+    @Override
+    public boolean isLoadedByChunks() {
+        return true;
+    }
+
+    @Override
+    public boolean hasLegacyData(ChunkPosition chunkPosition) {
+        return spawnersToMigrate.contains(chunkPosition) || barrelsToMigrate.contains(chunkPosition);
+    }
+
+    @Override
+    public void loadLegacyData(ChunkPosition chunkPosition) {
+        if(spawnersToMigrate.contains(chunkPosition))
+            legacySpawners.put(chunkPosition, legacyStorage.loadSpawners(chunkPosition));
+
+        if(barrelsToMigrate.contains(chunkPosition))
+            legacyBarrels.put(chunkPosition, legacyStorage.loadBarrels(chunkPosition));
+    }
+
+    @Override
+    public void loadEntities(Consumer<UUID> consumer) {
+        if(legacyStorage != null)
+            legacyStorage.loadEntities(consumer);
+    }
+
+    @Override
+    public void loadItems(Consumer<UUID> consumer) {
+        if(legacyStorage != null)
+            legacyStorage.loadItems(consumer);
+    }
+
+    @Override
+    public int countEntities() {
+        return legacyStorage == null ? 0 : legacyStorage.countEntities();
+    }
+
+    @Override
+    public int countItems() {
+        return legacyStorage == null ? 0 : legacyStorage.countItems();
+    }
+
+    @Override
+    public Map<UUID, Pair<Integer, SpawnCause>> loadEntities(Collection<UUID> uuids) {
+        return legacyStorage == null ? Collections.emptyMap() : legacyStorage.loadEntities(uuids);
+    }
+
+    @Override
+    public Map<UUID, Integer> loadItems(Collection<UUID> uuids) {
+        return legacyStorage == null ? Collections.emptyMap() : legacyStorage.loadItems(uuids);
+    }
+
+    @Override
+    public void loadSpawners(Consumer<UnloadedStackedSpawner> consumer) {
+        // Spawners are loaded with their chunks.
+    }
+
+    @Override
+    public void loadBarrels(Consumer<UnloadedStackedBarrel> consumer) {
+        // Barrels are loaded with their chunks.
+    }
+
+    @Override
+    public Map<Location, UnloadedStackedSpawner> loadSpawners(ChunkPosition chunkPosition) {
+        Map<Location, UnloadedStackedSpawner> chunkSpawners = Maps.newConcurrentMap();
+        Chunk chunk = getLoadedChunk(chunkPosition);
+
+        if(chunk == null)
+            return chunkSpawners;
+
+        Set<Long> deletedSpawners = spawnersToDelete.remove(chunkPosition);
+        boolean modified = deletedSpawners != null;
+
+        // Chunks that were loaded before their rows were read are migrated the next time they are loaded.
+        Map<Location, UnloadedStackedSpawner> chunkLegacySpawners = legacySpawners.remove(chunkPosition);
+
+        if(chunkLegacySpawners != null && spawnersToMigrate.remove(chunkPosition)) {
+            for(UnloadedStackedSpawner unloadedStackedSpawner : chunkLegacySpawners.values()) {
+                chunkSpawners.put(unloadedStackedSpawner.getLocation(), unloadedStackedSpawner);
+                legacyStorage.deleteSpawner(unloadedStackedSpawner.getLocation());
+            }
+            modified = true;
+        }
+
+        // Data that is already saved in the chunk is newer than the data of the database.
+        readSpawners(chunk, chunkSpawners);
+
+        if(deletedSpawners != null)
+            chunkSpawners.keySet().removeIf(location -> deletedSpawners.contains(GeneralUtils.getBlockKey(location)));
+
+        if(modified)
+            plugin.getNMSAdapter().setChunkData(chunk, SPAWNERS_KEY, writeSpawners(chunkSpawners.values()));
+
+        return chunkSpawners;
+    }
+
+    @Override
+    public Map<Location, UnloadedStackedBarrel> loadBarrels(ChunkPosition chunkPosition) {
+        Map<Location, UnloadedStackedBarrel> chunkBarrels = Maps.newConcurrentMap();
+        Chunk chunk = getLoadedChunk(chunkPosition);
+
+        if(chunk == null)
+            return chunkBarrels;
+
+        Set<Long> deletedBarrels = barrelsToDelete.remove(chunkPosition);
+        boolean modified = deletedBarrels != null;
+
+        Map<Location, UnloadedStackedBarrel> chunkLegacyBarrels = legacyBarrels.remove(chunkPosition);
+
+        if(chunkLegacyBarrels != null && barrelsToMigrate.remove(chunkPosition)) {
+            for(UnloadedStackedBarrel unloadedStackedBarrel : chunkLegacyBarrels.values()) {
+                chunkBarrels.put(unloadedStackedBarrel.getLocation(), unloadedStackedBarrel);
+                legacyStorage.deleteBarrel(unloadedStackedBarrel.getLocation());
+            }
+            modified = true;
+        }
+
+        // Data that is already saved in the chunk is newer than the data of the database.
+        readBarrels(chunk, chunkBarrels);
+
+        if(deletedBarrels != null)
+            chunkBarrels.keySet().removeIf(location -> deletedBarrels.contains(GeneralUtils.getBlockKey(location)));
+
+        if(modified)
+            plugin.getNMSAdapter().setChunkData(chunk, BARRELS_KEY, writeBarrels(chunkBarrels.values()));
+
+        return chunkBarrels;
+    }
+
+    @Override
+    public void saveSpawners(Collection<UnloadedStackedSpawner> spawners) {
+        Set<ChunkPosition> chunksToSave = new HashSet<>();
+        spawners.forEach(unloadedStackedSpawner -> chunksToSave.add(new ChunkPosition(unloadedStackedSpawner.getLocation())));
+        Executor.sync(() -> chunksToSave.forEach(this::saveChunk));
+    }
+
+    @Override
+    public void saveBarrels(Collection<UnloadedStackedBarrel> barrels) {
+        Set<ChunkPosition> chunksToSave = new HashSet<>();
+        barrels.forEach(unloadedStackedBarrel -> chunksToSave.add(new ChunkPosition(unloadedStackedBarrel.getLocation())));
+        Executor.sync(() -> chunksToSave.forEach(this::saveChunk));
+    }
+
+    @Override
+    public void deleteSpawner(Location location) {
+        Executor.sync(() -> {
+            ChunkPosition chunkPosition = new ChunkPosition(location);
+            if(!saveChunk(chunkPosition))
+                spawnersToDelete.computeIfAbsent(chunkPosition, s -> new HashSet<>()).add(GeneralUtils.getBlockKey(location));
+        });
+    }
+
+    @Override
+    public void deleteBarrel(Location location) {
+        Executor.sync(() -> {
+            ChunkPosition chunkPosition = new ChunkPosition(location);
+            if(!saveChunk(chunkPosition))
+                barrelsToDelete.computeIfAbsent(chunkPosition, s -> new HashSet<>()).add(GeneralUtils.getBlockKey(location));
+        });
+    }
+
+    @Override
+    public void deleteEntities(Collection<UUID> uuids) {
+        if(legacyStorage != null)
+            legacyStorage.deleteEntities(uuids);
+    }
+
+    @Override
+    public void deleteItems(Collection<UUID> uuids) {
+        if(legacyStorage != null)
+            legacyStorage.deleteItems(uuids);
+    }
+
+    @Override
+    public void saveChunk(Chunk chunk) {
+        List<StackedSpawner> stackedSpawners = plugin.getSystemManager().getStackedSpawners(chunk);
+        // Spawners without any data are not saved, same as when they are unloaded.
+        stackedSpawners.removeIf(stackedSpawner -> stackedSpawner.getStackAmount() <= 1 &&
+                ((WStackedSpawner) stackedSpawner).getUpgradeId() == 0);
+
+        List<StackedBarrel> stackedBarrels = plugin.getSystemManager().getStackedBarrels(chunk);
+
+        Collection<UnloadedStackedSpawner> spawners = new ArrayList<>(stackedSpawners.size());
+        stackedSpawners.forEach(stackedSpawner -> spawners.add(new WUnloadedStackedSpawner(stackedSpawner)));
+
+        Collection<UnloadedStackedBarrel> barrels = new ArrayList<>(stackedBarrels.size());
+        stackedBarrels.forEach(stackedBarrel -> barrels.add(new WUnloadedStackedBarrel(stackedBarrel)));
+
+        plugin.getNMSAdapter().setChunkData(chunk, SPAWNERS_KEY, writeSpawners(spawners));
+        plugin.getNMSAdapter().setChunkData(chunk, BARRELS_KEY, writeBarrels(barrels));
+    }
+
+    private boolean saveChunk(ChunkPosition chunkPosition){
+        Chunk chunk = getLoadedChunk(chunkPosition);
+
+        if(chunk == null)
+            return false;
+
+        saveChunk(chunk);
+
+        return true;
+    }
+
+    private void collectChunksToMigrate(String table, Set<ChunkPosition> chunksToMigrate){
+        SQLHelper.executeQuery("SELECT DISTINCT world, chunkX, chunkZ FROM " + table + ";", resultSet -> {
+            while (resultSet.next()) {
+                String worldName = WorldsDictionary.getName(resultSet.getInt("world"));
+                if(worldName != null)
+                    chunksToMigrate.add(new ChunkPosition(worldName, resultSet.getInt("chunkX"), resultSet.getInt("chunkZ")));
+            }
+        });
+    }
+
+    private void readSpawners(Chunk chunk, Map<Location, UnloadedStackedSpawner> chunkSpawners){
+        byte[] data = plugin.getNMSAdapter().getChunkData(chunk, SPAWNERS_KEY);
+
+        if(data == null)
+            return;
+
+        try(DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(data))){
+            int spawnersAmount = inputStream.readInt();
+            for(int i = 0; i < spawnersAmount; i++){
+                Location location = readLocation(inputStream, chunk);
+                chunkSpawners.put(location, new WUnloadedStackedSpawner(location, inputStream.readInt(), inputStream.readInt()));
+            }
+        }catch (IOException ex){
+            WildStackerPlugin.log("Couldn't load spawners of chunk " + chunk.getX() + ", " + chunk.getZ() + ".");
+            ex.printStackTrace();
+        }
+    }
+
+    private void readBarrels(Chunk chunk, Map<Location, UnloadedStackedBarrel> chunkBarrels){
+        byte[] data = plugin.getNMSAdapter().getChunkData(chunk, BARRELS_KEY);
+
+        if(data == null)
+            return;
+
+        try(DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(data))){
+            int barrelsAmount = inputStream.readInt();
+            for(int i = 0; i < barrelsAmount; i++){
+                Location location = readLocation(inputStream, chunk);
+                int stackAmount = inputStream.readInt();
+                byte[] item = new byte[inputStream.readInt()];
+                inputStream.readFully(item);
+                chunkBarrels.put(location, new WUnloadedStackedBarrel(location, stackAmount,
+                        CachedItemSerializer.deserialize(new String(item, StandardCharsets.UTF_8))));
+            }
+        }catch (Exception ex){
+            WildStackerPlugin.log("Couldn't load barrels of chunk " + chunk.getX() + ", " + chunk.getZ() + ".");
+            ex.printStackTrace();
+        }
+    }
+
+    private static byte[] writeSpawners(Collection<UnloadedStackedSpawner> spawners){
+        if(spawners.isEmpty())
+            return null;
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        try(DataOutputStream outputStream = new DataOutputStream(data)){
+            outputStream.writeInt(spawners.size());
+            for(UnloadedStackedSpawner unloadedStackedSpawner : spawners){
+                writeLocation(outputStream, unloadedStackedSpawner.getLocation());
+                outputStream.writeInt(unloadedStackedSpawner.getStackAmount());
+                outputStream.writeInt(((WUnloadedStackedSpawner) unloadedStackedSpawner).getUpgradeId());
+            }
+        }catch (IOException ex){
+            ex.printStackTrace();
+        }
+
+        return data.toByteArray();
+    }
+
+    private static byte[] writeBarrels(Collection<UnloadedStackedBarrel> barrels){
+        if(barrels.isEmpty())
+            return null;
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        try(DataOutputStream outputStream = new DataOutputStream(data)){
+            outputStream.writeInt(barrels.size());
+            for(UnloadedStackedBarrel unloadedStackedBarrel : barrels){
+                writeLocation(outputStream, unloadedStackedBarrel.getLocation());
+                outputStream.writeInt(unloadedStackedBarrel.getStackAmount());
+                byte[] item = CachedItemSerializer.serialize(unloadedStackedBarrel.getBarrelItem(1)).getBytes(StandardCharsets.UTF_8);
+                outputStream.writeInt(item.length);
+                outputStream.write(item);
+            }
+        }catch (IOException ex){
+            ex.printStackTrace();
+        }
+
+        return data.toByteArray();
+    }
+
+    // Positions are saved relative to the chunk, as the chunk itself is already known.
+    private static void writeLocation(DataOutputStream outputStream, Location location) throws IOException {
+        outputStream.writeByte(location.getBlockX() & 15);
+        outputStream.writeShort(location.getBlockY());
+        outputStream.writeByte(location.getBlockZ() & 15);
+    }
+
+    private static Location readLocation(DataInputStream inputStream, Chunk chunk) throws IOException {
+        int x = inputStream.readByte(), y = inputStream.readShort(), z = inputStream.readByte();
+        return new Location(chunk.getWorld(), (chunk.getX() << 4) + x, y, (chunk.getZ() << 4) + z);
+    }
+
+    private static Chunk getLoadedChunk(ChunkPosition chunkPosition){
+        World world = Bukkit.getWorld(chunkPosition.getWorld());
+        return world == null || !world.isChunkLoaded(chunkPosition.getX(), chunkPosition.getZ()) ? null :
+                world.getChunkAt(chunkPosition.getX(), chunkPosition.getZ());
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.bgsoftware.wildstacker.database;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
+import com.bgsoftware.wildstacker.utils.threads.Executor;
+import com.google.common.collect.Maps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// When persistent, the data is written into binary files inside the data folder of the plugin.
+public final class StorageBackend_FlatFile extends CachedStorageBackend {
+
+    private static final int FILE_VERSION = 1;
+
+    private final AtomicBoolean spawnersDirty = new AtomicBoolean(false);
+    private final AtomicBoolean barrelsDirty = new AtomicBoolean(false);
+
+    private final boolean persistent;
+
+    private File spawnersFile, barrelsFile;
+
+    public StorageBackend_FlatFile(boolean persistent){
+        this.persistent = persistent;
+    }
+
+    @Override
+    public String getName() {
+        return persistent ? "FlatFile" : "Memory";
+    }
+
+    @Override
+    public void open(WildStackerPlugin plugin) throws Exception {
+        super.open(plugin);
+
+        if(!persistent)
+            return;
+
+        File dataFolder = new File(plugin.getDataFolder(), "data");
+
+        if(!dataFolder.exists() && !dataFolder.mkdirs())
+            throw new IOException("Couldn't create the data folder " + dataFolder);
+
+        spawnersFile = new File(dataFolder, "spawners.dat");
+        barrelsFile = new File(dataFolder, "barrels.dat");
+
+        readFile(spawnersFile, spawners);
+        readFile(barrelsFile, barrels);
+    }
+
+    @Override
+    public void close() {
+        // Called after the database threads were stopped, therefore the files are written in the current thread.
+        if(spawnersDirty.getAndSet(false))
+            writeFile(spawnersFile, spawners);
+        if(barrelsDirty.getAndSet(false))
+            writeFile(barrelsFile, barrels);
+    }
+
+    @Override
+    protected void onSpawnersUpdate(Collection<StoredObject> saved, Collection<StoredObject> deleted) {
+        markDirty(spawnersDirty, spawnersFile, spawners);
+    }
+
+    @Override
+    protected void onBarrelsUpdate(Collection<StoredObject> saved, Collection<StoredObject> deleted) {
+        markDirty(barrelsDirty, barrelsFile, barrels);
+    }
+
+    private void markDirty(AtomicBoolean dirtyFlag, File file, Map<ChunkPosition, Map<Long, StoredObject>> objects){
+        // Changes are coalesced, so only one write is queued no matter how many changes were made.
+        if(persistent && !dirtyFlag.getAndSet(true)) {
+            Executor.data(() -> {
+                if(dirtyFlag.getAndSet(false))
+                    writeFile(file, objects);
+            });
+        }
+    }
+
+    private static void readFile(File file, Map<ChunkPosition, Map<Long, StoredObject>> objects) throws IOException {
+        if(!file.exists())
+            return;
+
+        try(DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            int version = inputStream.readInt();
+
+            if(version != FILE_VERSION)
+                throw new IOException("Unknown version " + version + " of file " + file.getName());
+
+            int worldsAmount = inputStream.readInt();
+
+            for(int i = 0; i < worldsAmount; i++){
+                String worldName = inputStream.readUTF();
+                int objectsAmount = inputStream.readInt();
+
+                for(int j = 0; j < objectsAmount; j++){
+                    int x = inputStream.readInt(), y = inputStream.readInt(), z = inputStream.readInt();
+                    int stackAmount = inputStream.readInt(), upgradeId = inputStream.readInt();
+                    // Items are not written with writeUTF, as serialized items may be larger than 64KB.
+                    byte[] item = new byte[inputStream.readInt()];
+                    inputStream.readFully(item);
+
+                    put(objects, new StoredObject(worldName, x, y, z, stackAmount, upgradeId, new String(item, StandardCharsets.UTF_8)));
+                }
+            }
+        }
+    }
+
+    private static void writeFile(File file, Map<ChunkPosition, Map<Long, StoredObject>> objects){
+        // Changes made while the file is written queue another write on another database thread.
+        // Both writes use the same temp file, so they must not run at the same time.
+        synchronized (file) {
+            writeFileUnsafe(file, objects);
+        }
+    }
+
+    private static void writeFileUnsafe(File file, Map<ChunkPosition, Map<Long, StoredObject>> objects){
+        Map<String, Collection<StoredObject>> objectsByWorlds = Maps.newHashMap();
+
+        objects.forEach((chunkPosition, chunkObjects) -> objectsByWorlds.computeIfAbsent(chunkPosition.getWorld(),
+                s -> new ArrayList<>()).addAll(chunkObjects.values()));
+
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try(DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))){
+            outputStream.writeInt(FILE_VERSION);
+            outputStream.writeInt(objectsByWorlds.size());
+
+            for(Map.Entry<String, Collection<StoredObject>> entry : objectsByWorlds.entrySet()){
+                outputStream.writeUTF(entry.getKey());
+                outputStream.writeInt(entry.getValue().size());
+
+                for(StoredObject storedObject : entry.getValue()){
+                    outputStream.writeInt(storedObject.x);
+                    outputStream.writeInt(storedObject.y);
+                    outputStream.writeInt(storedObject.z);
+                    outputStream.writeInt(storedObject.stackAmount);
+                    outputStream.writeInt(storedObject.upgradeId);
+                    byte[] item = storedObject.item.getBytes(StandardCharsets.UTF_8);
+                    outputStream.writeInt(item.length);
+                    outputStream.write(item);
+                }
+            }
+        }catch (IOException ex){
+            WildStackerPlugin.log("Couldn't save " + file.getName() + ".");
+            ex.printStackTrace();
+            return;
+        }
+
+        try {
+            // The file is replaced only after it was fully written, so a crash won't leave it half written.
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }catch (IOException ex){
+            WildStackerPlugin.log("Couldn't save " + file.getName() + ".");
+            ex.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,570 @@
+package com.bgsoftware.wildstacker.database;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.utils.GeneralUtils;
+import com.bgsoftware.wildstacker.utils.threads.Executor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+// Saves all the changes into an append-only journal, which is written sequentially through a memory-mapped buffer.
+// Once the journal grows too much, it's compacted into a snapshot of the data in the background.
+// When the server starts, the snapshot is loaded and the journals that were written after it are replayed on top of it.
+public final class StorageBackend_Journal extends CachedStorageBackend {
+
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int MAP_REGION_SIZE = 4 * 1024 * 1024;
+    private static final long COMPACT_JOURNAL_SIZE = 32 * 1024 * 1024;
+
+    private static final byte RECORD_ITEM = 1;
+    private static final byte RECORD_SPAWNER = 2;
+    private static final byte RECORD_BARREL = 3;
+    private static final byte RECORD_SPAWNER_DELETE = 4;
+    private static final byte RECORD_BARREL_DELETE = 5;
+    private static final byte RECORD_WORLD = 6;
+
+    // Worlds and barrel items are written once into the journal, and records reference them by their id.
+    // Positions are written as the id of the world and the block key of the object.
+    // The ids of worlds are kept by the journal itself, as WorldsDictionary is saved in the SQLite database.
+    private final Map<String, Integer> worldIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> worlds = new ConcurrentHashMap<>();
+    private final Set<Integer> journalWorlds = new HashSet<>();
+    private int lastWorldId = 0;
+
+    private final Map<String, Integer> itemIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> items = new ConcurrentHashMap<>();
+    private final Set<Integer> journalItems = new HashSet<>();
+    private int lastItemId = 0;
+
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private final AtomicBoolean forceScheduled = new AtomicBoolean(false);
+    private final CRC32 crc32 = new CRC32();
+
+    private File journalFolder, snapshotFile;
+    private FileChannel journalChannel;
+    private MappedByteBuffer journalBuffer;
+    private long snapshotGeneration, journalGeneration, regionStart, journalSize;
+
+    @Override
+    public String getName() {
+        return "Journal";
+    }
+
+    @Override
+    public void open(WildStackerPlugin plugin) throws Exception {
+        super.open(plugin);
+
+        int replayedRecords = open(new File(plugin.getDataFolder(), "journal"));
+
+        if(replayedRecords > 0)
+            WildStackerPlugin.log("Replayed " + replayedRecords + " records of the journal.");
+
+        // All the journals were replayed, so they can be merged into the snapshot right away.
+        if(journalGeneration - 1 != snapshotGeneration)
+            compactJournals(journalGeneration - 1);
+    }
+
+    // Loads the snapshot, replays the journals that were written after it and starts a new journal.
+    // Returns the amount of records that were replayed. Nothing is logged here, so the plugin doesn't need to be enabled.
+    int open(File journalFolder) throws IOException {
+        this.journalFolder = journalFolder;
+
+        if(!journalFolder.exists() && !journalFolder.mkdirs())
+            throw new IOException("Couldn't create the journal folder " + journalFolder);
+
+        snapshotFile = new File(journalFolder, "snapshot.dat");
+        snapshotGeneration = readSnapshot();
+
+        long lastGeneration = snapshotGeneration;
+        int replayedRecords = 0;
+
+        for(long generation : getJournalGenerations()){
+            if(generation > snapshotGeneration) {
+                replayedRecords += replayJournal(getJournalFile(generation));
+                lastGeneration = Math.max(lastGeneration, generation);
+            }
+        }
+
+        openJournal(lastGeneration + 1);
+
+        return replayedRecords;
+    }
+
+    @Override
+    public synchronized void close() {
+        if(journalBuffer != null)
+            journalBuffer.force();
+
+        try {
+            if(journalChannel != null)
+                journalChannel.close();
+        }catch (IOException ex){
+            ex.printStackTrace();
+        }
+
+        journalBuffer = null;
+        journalChannel = null;
+    }
+
+    @Override
+    protected void onSpawnersUpdate(Collection<StoredObject> saved, Collection<StoredObject> deleted) {
+        appendRecords(RECORD_SPAWNER, saved, RECORD_SPAWNER_DELETE, deleted);
+    }
+
+    @Override
+    protected void onBarrelsUpdate(Collection<StoredObject> saved, Collection<StoredObject> deleted) {
+        appendRecords(RECORD_BARREL, saved, RECORD_BARREL_DELETE, deleted);
+    }
+
+    private synchronized void appendRecords(byte saveType, Collection<StoredObject> saved, byte deleteType, Collection<StoredObject> deleted){
+        if(journalChannel == null)
+            return;
+
+        try {
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(recordBytes);
+
+            for(StoredObject storedObject : saved){
+                appendWorld(record, recordBytes, storedObject.world);
+
+                int itemId = saveType == RECORD_BARREL ? getItemId(storedObject.item) : 0;
+
+                if(saveType == RECORD_BARREL && journalItems.add(itemId)){
+                    record.writeByte(RECORD_ITEM);
+                    record.writeInt(itemId);
+                    writeString(record, storedObject.item);
+                    appendRecord(recordBytes);
+                }
+
+                record.writeByte(saveType);
+                writePosition(record, storedObject);
+                record.writeInt(storedObject.stackAmount);
+                record.writeInt(saveType == RECORD_BARREL ? itemId : storedObject.upgradeId);
+                appendRecord(recordBytes);
+            }
+
+            for(StoredObject storedObject : deleted){
+                appendWorld(record, recordBytes, storedObject.world);
+
+                record.writeByte(deleteType);
+                writePosition(record, storedObject);
+                appendRecord(recordBytes);
+            }
+        }catch (IOException ex){
+            WildStackerPlugin.log("Couldn't write into the journal.");
+            ex.printStackTrace();
+            return;
+        }
+
+        scheduleForce();
+
+        if(journalSize >= COMPACT_JOURNAL_SIZE && compacting.compareAndSet(false, true)) {
+            long compactedGeneration = journalGeneration;
+
+            try {
+                openJournal(journalGeneration + 1);
+            }catch (IOException ex){
+                WildStackerPlugin.log("Couldn't start a new journal.");
+                ex.printStackTrace();
+                compacting.set(false);
+                return;
+            }
+
+            Executor.data(() -> {
+                try {
+                    compactJournals(compactedGeneration);
+                }finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    private void appendWorld(DataOutputStream record, ByteArrayOutputStream recordBytes, String world) throws IOException {
+        int worldId = getWorldId(world);
+
+        if(journalWorlds.add(worldId)){
+            record.writeByte(RECORD_WORLD);
+            record.writeInt(worldId);
+            record.writeUTF(world);
+            appendRecord(recordBytes);
+        }
+    }
+
+    private void appendRecord(ByteArrayOutputStream recordBytes) throws IOException {
+        byte[] record = recordBytes.toByteArray();
+        recordBytes.reset();
+
+        crc32.reset();
+        crc32.update(record, 0, record.length);
+
+        int requiredSize = record.length + 8;
+
+        if(journalBuffer.remaining() < requiredSize) {
+            // Only the current region is flushed by scheduleForce, so the records of this region are flushed now.
+            journalBuffer.force();
+            // The new region starts right where the last record ended, so there are no gaps in the journal.
+            regionStart += journalBuffer.position();
+            journalBuffer = journalChannel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(MAP_REGION_SIZE, requiredSize));
+        }
+
+        journalBuffer.putInt(record.length);
+        journalBuffer.putInt((int) crc32.getValue());
+        journalBuffer.put(record);
+        journalSize += requiredSize;
+    }
+
+    private void scheduleForce(){
+        // Flushing the buffer to the disk is done by the database threads, so saving never waits for the disk.
+        if(!forceScheduled.getAndSet(true)) {
+            Executor.data(() -> {
+                forceScheduled.set(false);
+                synchronized (this) {
+                    if (journalBuffer != null)
+                        journalBuffer.force();
+                }
+            });
+        }
+    }
+
+    private void openJournal(long generation) throws IOException {
+        close();
+
+        journalGeneration = generation;
+        journalWorlds.clear();
+        journalItems.clear();
+        regionStart = 0;
+        journalSize = 0;
+
+        journalChannel = new RandomAccessFile(getJournalFile(generation), "rw").getChannel();
+        journalBuffer = journalChannel.map(FileChannel.MapMode.READ_WRITE, 0, MAP_REGION_SIZE);
+    }
+
+    private synchronized int getWorldId(String world){
+        Integer worldId = worldIds.get(world);
+
+        if(worldId == null){
+            worldId = ++lastWorldId;
+            worldIds.put(world, worldId);
+            worlds.put(worldId, world);
+        }
+
+        return worldId;
+    }
+
+    private synchronized void registerWorld(int worldId, String world){
+        worldIds.put(world, worldId);
+        worlds.put(worldId, world);
+        lastWorldId = Math.max(lastWorldId, worldId);
+    }
+
+    private synchronized int getItemId(String item){
+        Integer itemId = itemIds.get(item);
+
+        if(itemId == null){
+            itemId = ++lastItemId;
+            itemIds.put(item, itemId);
+            items.put(itemId, item);
+        }
+
+        return itemId;
+    }
+
+    private synchronized void registerItem(int itemId, String item){
+        itemIds.put(item, itemId);
+        items.put(itemId, item);
+        lastItemId = Math.max(lastItemId, itemId);
+    }
+
+    private int replayJournal(File journalFile) throws IOException {
+        int replayedRecords = 0;
+
+        try(DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))){
+            CRC32 recordCrc = new CRC32();
+
+            while(true){
+                int recordLength, recordChecksum;
+                byte[] record;
+
+                try {
+                    recordLength = inputStream.readInt();
+
+                    // The rest of the journal was never written.
+                    if(recordLength <= 0)
+                        break;
+
+                    recordChecksum = inputStream.readInt();
+                    record = new byte[recordLength];
+                    inputStream.readFully(record);
+                }catch (EOFException ex){
+                    break;
+                }
+
+                recordCrc.reset();
+                recordCrc.update(record, 0, record.length);
+
+                // The server stopped in the middle of writing this record.
+                if((int) recordCrc.getValue() != recordChecksum)
+                    break;
+
+                replayRecord(new DataInputStream(new ByteArrayInputStream(record)));
+                replayedRecords++;
+            }
+        }
+
+        return replayedRecords;
+    }
+
+    private void replayRecord(DataInputStream record) throws IOException {
+        byte recordType = record.readByte();
+
+        if(recordType == RECORD_WORLD){
+            registerWorld(record.readInt(), record.readUTF());
+            return;
+        }
+
+        if(recordType == RECORD_ITEM){
+            registerItem(record.readInt(), readString(record));
+            return;
+        }
+
+        String world = readWorld(record);
+        long blockKey = record.readLong();
+        int x = GeneralUtils.getBlockKeyX(blockKey), y = GeneralUtils.getBlockKeyY(blockKey), z = GeneralUtils.getBlockKeyZ(blockKey);
+
+        switch (recordType){
+            case RECORD_SPAWNER:
+                put(spawners, new StoredObject(world, x, y, z, record.readInt(), record.readInt(), null));
+                break;
+            case RECORD_BARREL:
+                int stackAmount = record.readInt();
+                put(barrels, new StoredObject(world, x, y, z, stackAmount, 0, items.get(record.readInt())));
+                break;
+            case RECORD_SPAWNER_DELETE:
+                remove(spawners, world, x, y, z);
+                break;
+            case RECORD_BARREL_DELETE:
+                remove(barrels, world, x, y, z);
+                break;
+            default:
+                throw new IOException("Unknown record type " + recordType);
+        }
+    }
+
+    private long readSnapshot() throws IOException {
+        if(!snapshotFile.exists())
+            return 0;
+
+        try(DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))){
+            int version = inputStream.readInt();
+
+            if(version != SNAPSHOT_VERSION)
+                throw new IOException("Unknown version " + version + " of file " + snapshotFile.getName());
+
+            long generation = inputStream.readLong();
+
+            int worldsAmount = inputStream.readInt();
+            for(int i = 0; i < worldsAmount; i++)
+                registerWorld(inputStream.readInt(), inputStream.readUTF());
+
+            int itemsAmount = inputStream.readInt();
+            for(int i = 0; i < itemsAmount; i++)
+                registerItem(inputStream.readInt(), readString(inputStream));
+
+            int spawnersAmount = inputStream.readInt();
+            for(int i = 0; i < spawnersAmount; i++) {
+                String world = readWorld(inputStream);
+                long blockKey = inputStream.readLong();
+                put(spawners, new StoredObject(world, GeneralUtils.getBlockKeyX(blockKey), GeneralUtils.getBlockKeyY(blockKey),
+                        GeneralUtils.getBlockKeyZ(blockKey), inputStream.readInt(), inputStream.readInt(), null));
+            }
+
+            int barrelsAmount = inputStream.readInt();
+            for(int i = 0; i < barrelsAmount; i++) {
+                String world = readWorld(inputStream);
+                long blockKey = inputStream.readLong();
+                int stackAmount = inputStream.readInt();
+                put(barrels, new StoredObject(world, GeneralUtils.getBlockKeyX(blockKey), GeneralUtils.getBlockKeyY(blockKey),
+                        GeneralUtils.getBlockKeyZ(blockKey), stackAmount, 0, items.get(inputStream.readInt())));
+            }
+
+            return generation;
+        }
+    }
+
+    private void compactJournals(long generation){
+        long startTime = System.currentTimeMillis();
+
+        try {
+            int snapshotObjects = compact(generation);
+            WildStackerPlugin.log("Compacted the journal into " + snapshotObjects + " spawners and barrels, took " +
+                    (System.currentTimeMillis() - startTime) + " ms.");
+        }catch (IOException ex){
+            WildStackerPlugin.log("Couldn't compact the journal.");
+            ex.printStackTrace();
+        }
+    }
+
+    // Writes all the objects into a new snapshot, and deletes the journals up to the given generation.
+    // Returns the amount of objects in the snapshot.
+    int compact(long generation) throws IOException {
+        // Records are full copies of the objects, therefore changes that are made while the snapshot is written
+        // are safe to be included in it - they will be replayed again from the newer journal.
+        List<StoredObject> spawnersSnapshot = new ArrayList<>(), barrelsSnapshot = new ArrayList<>();
+        spawners.values().forEach(chunkSpawners -> spawnersSnapshot.addAll(chunkSpawners.values()));
+        barrels.values().forEach(chunkBarrels -> barrelsSnapshot.addAll(chunkBarrels.values()));
+
+        Map<Integer, String> snapshotWorlds = new HashMap<>();
+        spawnersSnapshot.forEach(storedObject -> snapshotWorlds.put(getWorldId(storedObject.world), storedObject.world));
+        barrelsSnapshot.forEach(storedObject -> snapshotWorlds.put(getWorldId(storedObject.world), storedObject.world));
+
+        Map<Integer, String> snapshotItems = new HashMap<>();
+        barrelsSnapshot.forEach(storedObject -> snapshotItems.put(getItemId(storedObject.item), storedObject.item));
+
+        File tempFile = new File(journalFolder, snapshotFile.getName() + ".tmp");
+
+        try(FileChannel snapshotChannel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(snapshotChannel)))){
+            outputStream.writeInt(SNAPSHOT_VERSION);
+            outputStream.writeLong(generation);
+
+            outputStream.writeInt(snapshotWorlds.size());
+            for(Map.Entry<Integer, String> entry : snapshotWorlds.entrySet()){
+                outputStream.writeInt(entry.getKey());
+                outputStream.writeUTF(entry.getValue());
+            }
+
+            outputStream.writeInt(snapshotItems.size());
+            for(Map.Entry<Integer, String> entry : snapshotItems.entrySet()){
+                outputStream.writeInt(entry.getKey());
+                writeString(outputStream, entry.getValue());
+            }
+
+            outputStream.writeInt(spawnersSnapshot.size());
+            for(StoredObject storedObject : spawnersSnapshot){
+                writePosition(outputStream, storedObject);
+                outputStream.writeInt(storedObject.stackAmount);
+                outputStream.writeInt(storedObject.upgradeId);
+            }
+
+            outputStream.writeInt(barrelsSnapshot.size());
+            for(StoredObject storedObject : barrelsSnapshot){
+                writePosition(outputStream, storedObject);
+                outputStream.writeInt(storedObject.stackAmount);
+                outputStream.writeInt(getItemId(storedObject.item));
+            }
+
+            // The snapshot must be on the disk before it replaces the old one, as the journals are deleted after that.
+            outputStream.flush();
+            snapshotChannel.force(true);
+        }
+
+        // The snapshot is replaced only after it was fully written, so a crash won't leave it half written.
+        try {
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }catch (AtomicMoveNotSupportedException ex){
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        forceFolder();
+
+        snapshotGeneration = generation;
+
+        // Journals that couldn't be deleted are skipped when replaying, as their generation is covered by the snapshot.
+        for(long journalGeneration : getJournalGenerations()){
+            if(journalGeneration <= generation)
+                getJournalFile(journalGeneration).delete();
+        }
+
+        return spawnersSnapshot.size() + barrelsSnapshot.size();
+    }
+
+    private void forceFolder(){
+        // The rename of the snapshot is only durable once the folder itself is flushed.
+        // Folders cannot be opened on all platforms, in which case the rename is flushed by the file system itself.
+        try(FileChannel folderChannel = FileChannel.open(journalFolder.toPath(), StandardOpenOption.READ)){
+            folderChannel.force(true);
+        }catch (IOException ignored){}
+    }
+
+    private List<Long> getJournalGenerations(){
+        List<Long> generations = new ArrayList<>();
+        File[] journalFiles = journalFolder.listFiles();
+
+        if(journalFiles != null) {
+            for (File journalFile : journalFiles) {
+                String fileName = journalFile.getName();
+                if (fileName.startsWith("journal-") && fileName.endsWith(".log")) {
+                    try {
+                        generations.add(Long.parseLong(fileName.substring(8, fileName.length() - 4)));
+                    } catch (NumberFormatException ignored) {}
+                }
+            }
+        }
+
+        generations.sort(Long::compare);
+
+        return generations;
+    }
+
+    private File getJournalFile(long generation){
+        return new File(journalFolder, "journal-" + generation + ".log");
+    }
+
+    private void writePosition(DataOutputStream outputStream, StoredObject storedObject) throws IOException {
+        outputStream.writeInt(getWorldId(storedObject.world));
+        outputStream.writeLong(GeneralUtils.getBlockKey(storedObject.x, storedObject.y, storedObject.z));
+    }
+
+    private String readWorld(DataInputStream inputStream) throws IOException {
+        int worldId = inputStream.readInt();
+        String world = worlds.get(worldId);
+
+        if(world == null)
+            throw new IOException("Unknown world id " + worldId);
+
+        return world;
+    }
+
+    // Items are not written with writeUTF, as serialized items may be larger than 64KB.
+    private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private static String readString(DataInputStream inputStream) throws IOException {
+        byte[] bytes = new byte[inputStream.readInt()];
+        inputStream.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,519 @@
+package com.bgsoftware.wildstacker.database;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.api.enums.SpawnCause;
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedBarrel;
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.objects.WUnloadedStackedBarrel;
+import com.bgsoftware.wildstacker.objects.WUnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.utils.GeneralUtils;
+import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
+import com.bgsoftware.wildstacker.utils.pair.MultiPair;
+import com.bgsoftware.wildstacker.utils.pair.MutablePair;
+import com.bgsoftware.wildstacker.utils.pair.Pair;
+import com.bgsoftware.wildstacker.utils.threads.Executor;
+import com.google.common.collect.Maps;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.inventory.ItemStack;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public final class StorageBackend_SQLite implements StorageBackend {
+
+    private static final int DECODE_BATCH_SIZE = 500;
+    private static final int RECORDS_BATCH_SIZE = 500;
+
+    private WildStackerPlugin plugin;
+
+    @Override
+    public String getName() {
+        return "SQLite";
+    }
+
+    @Override
+    public void open(WildStackerPlugin plugin) throws Exception {
+        this.plugin = plugin;
+
+        SQLHelper.createConnection(plugin);
+
+        WorldsDictionary.load();
+        ItemsDictionary.load();
+
+        boolean legacySpawners = isLegacyTable("spawners"), legacyBarrels = isLegacyTable("barrels");
+        // Barrels that were keyed by block keys, but still had their items saved in the table itself.
+        boolean inlinedItemsBarrels = !legacyBarrels && hasInlinedItems();
+
+        // Legacy tables that are left from a migration that didn't finish are migrated again.
+        if(legacySpawners || tableExists("spawners_legacy"))
+            migrateLegacyTable("spawners", "upgrade", legacySpawners);
+
+        if(legacyBarrels || inlinedItemsBarrels || tableExists("barrels_legacy"))
+            migrateLegacyTable("barrels", "item", legacyBarrels || inlinedItemsBarrels);
+
+        createTables();
+
+        // Entities and items are looked up by their uuids, the tables themselves are only left from old versions.
+        SQLHelper.executeUpdate("CREATE INDEX IF NOT EXISTS entities_by_uuid ON entities (uuid);", ex -> {});
+        SQLHelper.executeUpdate("CREATE INDEX IF NOT EXISTS items_by_uuid ON items (uuid);", ex -> {});
+    }
+
+    @Override
+    public void close() {
+        SQLHelper.close();
+    }
+
+    @Override
+    public void loadEntities(Consumer<UUID> consumer) {
+        SQLHelper.executeQuery("SELECT uuid FROM entities;", resultSet -> {
+            while (resultSet.next())
+                consumer.accept(UUID.fromString(resultSet.getString("uuid")));
+        }, ex -> {});
+    }
+
+    @Override
+    public void loadItems(Consumer<UUID> consumer) {
+        SQLHelper.executeQuery("SELECT uuid FROM items;", resultSet -> {
+            while (resultSet.next())
+                consumer.accept(UUID.fromString(resultSet.getString("uuid")));
+        }, ex -> {});
+    }
+
+    @Override
+    public int countEntities() {
+        return countRows("entities");
+    }
+
+    @Override
+    public int countItems() {
+        return countRows("items");
+    }
+
+    @Override
+    public Map<UUID, Pair<Integer, SpawnCause>> loadEntities(Collection<UUID> uuids) {
+        Map<UUID, Pair<Integer, SpawnCause>> entitiesData = new HashMap<>();
+
+        loadRecords("entities", "stackAmount, spawnCause", uuids, resultSet -> entitiesData.put(UUID.fromString(resultSet.getString("uuid")),
+                new Pair<>(resultSet.getInt("stackAmount"), SpawnCause.matchCause(resultSet.getString("spawnCause")))));
+
+        return entitiesData;
+    }
+
+    @Override
+    public Map<UUID, Integer> loadItems(Collection<UUID> uuids) {
+        Map<UUID, Integer> itemsData = new HashMap<>();
+
+        loadRecords("items", "stackAmount", uuids, resultSet ->
+                itemsData.put(UUID.fromString(resultSet.getString("uuid")), resultSet.getInt("stackAmount")));
+
+        return itemsData;
+    }
+
+    @Override
+    public void loadSpawners(Consumer<UnloadedStackedSpawner> consumer) {
+        SQLHelper.executeQuery("SELECT * FROM spawners;", resultSet -> {
+            while (resultSet.next()) {
+                UnloadedStackedSpawner unloadedStackedSpawner = loadSpawner(resultSet);
+                if (unloadedStackedSpawner != null)
+                    consumer.accept(unloadedStackedSpawner);
+            }
+        });
+
+        deleteInvalidWorlds("spawners");
+    }
+
+    @Override
+    public void loadBarrels(Consumer<UnloadedStackedBarrel> consumer) {
+        List<CompletableFuture<Void>> decodeTasks = new ArrayList<>();
+
+        SQLHelper.executeQuery("SELECT * FROM barrels;", resultSet -> {
+            List<MultiPair<Location, Integer, Integer>> barrelsToDecode = new ArrayList<>(DECODE_BATCH_SIZE);
+
+            while (resultSet.next()) {
+                Location blockLocation = getBlockLocation(resultSet);
+                if(blockLocation != null)
+                    barrelsToDecode.add(new MultiPair<>(blockLocation, resultSet.getInt("stackAmount"), resultSet.getInt("itemId")));
+
+                // Deserializing the items of barrels is expensive, therefore it's split between the database threads.
+                // Items are shared between barrels, so each distinct item is usually deserialized only once.
+                if(barrelsToDecode.size() >= DECODE_BATCH_SIZE) {
+                    decodeTasks.add(decodeBarrels(barrelsToDecode, consumer));
+                    barrelsToDecode = new ArrayList<>(DECODE_BATCH_SIZE);
+                }
+            }
+
+            if(!barrelsToDecode.isEmpty())
+                decodeTasks.add(decodeBarrels(barrelsToDecode, consumer));
+        });
+
+        CompletableFuture.allOf(decodeTasks.toArray(new CompletableFuture[0])).join();
+
+        deleteInvalidWorlds("barrels");
+    }
+
+    @Override
+    public Map<Location, UnloadedStackedSpawner> loadSpawners(ChunkPosition chunkPosition) {
+        Map<Location, UnloadedStackedSpawner> chunkSpawners = Maps.newConcurrentMap();
+
+        SQLHelper.executePreparedQuery("SELECT * FROM spawners WHERE world=? AND chunkX=? AND chunkZ=?;", preparedStatement -> {
+            preparedStatement.setInt(1, WorldsDictionary.getId(chunkPosition.getWorld()));
+            preparedStatement.setInt(2, chunkPosition.getX());
+            preparedStatement.setInt(3, chunkPosition.getZ());
+        }, resultSet -> {
+            while (resultSet.next()) {
+                UnloadedStackedSpawner unloadedStackedSpawner = loadSpawner(resultSet);
+                if(unloadedStackedSpawner != null)
+                    chunkSpawners.put(unloadedStackedSpawner.getLocation(), unloadedStackedSpawner);
+            }
+        });
+
+        return chunkSpawners;
+    }
+
+    @Override
+    public Map<Location, UnloadedStackedBarrel> loadBarrels(ChunkPosition chunkPosition) {
+        Map<Location, UnloadedStackedBarrel> chunkBarrels = Maps.newConcurrentMap();
+
+        SQLHelper.executePreparedQuery("SELECT * FROM barrels WHERE world=? AND chunkX=? AND chunkZ=?;", preparedStatement -> {
+            preparedStatement.setInt(1, WorldsDictionary.getId(chunkPosition.getWorld()));
+            preparedStatement.setInt(2, chunkPosition.getX());
+            preparedStatement.setInt(3, chunkPosition.getZ());
+        }, resultSet -> {
+            while (resultSet.next()) {
+                UnloadedStackedBarrel unloadedStackedBarrel = loadBarrel(resultSet);
+                if(unloadedStackedBarrel != null)
+                    chunkBarrels.put(unloadedStackedBarrel.getLocation(), unloadedStackedBarrel);
+            }
+        });
+
+        return chunkBarrels;
+    }
+
+    @Override
+    public void saveSpawners(Collection<UnloadedStackedSpawner> spawners) {
+        if(spawners.isEmpty())
+            return;
+
+        StatementHolder statementHolder = Query.SPAWNER_INSERT.getStatementHolder();
+        statementHolder.prepareBatch();
+
+        for(UnloadedStackedSpawner unloadedStackedSpawner : spawners) {
+            statementHolder.setLocation(unloadedStackedSpawner.getLocation())
+                    .setBlockPosition(unloadedStackedSpawner.getLocation())
+                    .setInt(unloadedStackedSpawner.getStackAmount())
+                    .setInt(((WUnloadedStackedSpawner) unloadedStackedSpawner).getUpgradeId())
+                    .addBatch();
+        }
+
+        statementHolder.execute(true);
+    }
+
+    @Override
+    public void saveBarrels(Collection<UnloadedStackedBarrel> barrels) {
+        if(barrels.isEmpty())
+            return;
+
+        StatementHolder statementHolder = Query.BARREL_INSERT.getStatementHolder();
+        statementHolder.prepareBatch();
+
+        for(UnloadedStackedBarrel unloadedStackedBarrel : barrels) {
+            statementHolder.setLocation(unloadedStackedBarrel.getLocation())
+                    .setBlockPosition(unloadedStackedBarrel.getLocation())
+                    .setInt(unloadedStackedBarrel.getStackAmount())
+                    .setInt(ItemsDictionary.getId(unloadedStackedBarrel.getBarrelItem(1)))
+                    .addBatch();
+        }
+
+        statementHolder.execute(true);
+    }
+
+    @Override
+    public void deleteSpawner(Location location) {
+        Query.SPAWNER_DELETE.getStatementHolder()
+                .setLocation(location)
+                .execute(true);
+    }
+
+    @Override
+    public void deleteBarrel(Location location) {
+        Query.BARREL_DELETE.getStatementHolder()
+                .setLocation(location)
+                .execute(true);
+    }
+
+    @Override
+    public void deleteEntities(Collection<UUID> uuids) {
+        deleteRecords(Query.ENTITY_DELETE, uuids);
+    }
+
+    @Override
+    public void deleteItems(Collection<UUID> uuids) {
+        deleteRecords(Query.ITEM_DELETE, uuids);
+    }
+
+    private CompletableFuture<Void> decodeBarrels(List<MultiPair<Location, Integer, Integer>> barrelsToDecode,
+                                                  Consumer<UnloadedStackedBarrel> consumer){
+        return Executor.dataFuture(() -> {
+            for(MultiPair<Location, Integer, Integer> barrelData : barrelsToDecode) {
+                UnloadedStackedBarrel unloadedStackedBarrel = loadBarrel(barrelData.getX(), barrelData.getY(), barrelData.getZ());
+                if (unloadedStackedBarrel != null)
+                    consumer.accept(unloadedStackedBarrel);
+            }
+        });
+    }
+
+    private UnloadedStackedSpawner loadSpawner(ResultSet resultSet) throws SQLException {
+        Location blockLocation = getBlockLocation(resultSet);
+
+        if(blockLocation == null)
+            return null;
+
+        int stackAmount = resultSet.getInt("stackAmount");
+        int upgradeId = resultSet.getInt("upgrade");
+        return new WUnloadedStackedSpawner(blockLocation, stackAmount, upgradeId);
+    }
+
+    private UnloadedStackedBarrel loadBarrel(ResultSet resultSet) throws SQLException {
+        Location blockLocation = getBlockLocation(resultSet);
+        return blockLocation == null ? null : loadBarrel(blockLocation, resultSet.getInt("stackAmount"), resultSet.getInt("itemId"));
+    }
+
+    private UnloadedStackedBarrel loadBarrel(Location blockLocation, int stackAmount, int itemId){
+        try {
+            ItemStack barrelItem = ItemsDictionary.getItem(itemId);
+            return new WUnloadedStackedBarrel(blockLocation, stackAmount, barrelItem);
+        } catch (Exception ex) {
+            WildStackerPlugin.log("Couldn't load barrel: " + blockLocation);
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    private static Location getBlockLocation(ResultSet resultSet) throws SQLException {
+        String worldName = WorldsDictionary.getName(resultSet.getInt("world"));
+        World blockWorld = worldName == null ? null : Bukkit.getWorld(worldName);
+        return blockWorld == null ? null : new Location(blockWorld, resultSet.getInt("x"), resultSet.getInt("y"), resultSet.getInt("z"));
+    }
+
+    private void deleteInvalidWorlds(String table){
+        Set<Integer> invalidWorlds = new HashSet<>();
+
+        SQLHelper.executeQuery("SELECT DISTINCT world FROM " + table + ";", resultSet -> {
+            while (resultSet.next()) {
+                String worldName = WorldsDictionary.getName(resultSet.getInt("world"));
+                if(worldName == null || Bukkit.getWorld(worldName) == null)
+                    invalidWorlds.add(resultSet.getInt("world"));
+            }
+        });
+
+        for(int worldId : invalidWorlds) {
+            WildStackerPlugin.log("Couldn't load " + table + " of world " + WorldsDictionary.getName(worldId) + ": Null world.");
+
+            if(plugin.getSettings().deleteInvalidWorlds) {
+                SQLHelper.executeUpdate("DELETE FROM " + table + " WHERE world = " + worldId + ";");
+                WildStackerPlugin.log("Deleted " + table + " of world " + WorldsDictionary.getName(worldId) + " from database.");
+            }
+        }
+    }
+
+    private static void loadRecords(String table, String columns, Collection<UUID> uuids, SQLHelper.QueryConsumer<ResultSet> consumer){
+        List<UUID> uuidsList = new ArrayList<>(uuids);
+
+        // All the records of a chunk are looked up together, split into batches that fit the parameters limit of SQLite.
+        for(int batchStart = 0; batchStart < uuidsList.size(); batchStart += RECORDS_BATCH_SIZE) {
+            List<UUID> batch = uuidsList.subList(batchStart, Math.min(uuidsList.size(), batchStart + RECORDS_BATCH_SIZE));
+
+            StringBuilder parameters = new StringBuilder();
+            for(int i = 0; i < batch.size(); i++)
+                parameters.append(i == 0 ? "?" : ", ?");
+
+            SQLHelper.executePreparedQuery("SELECT uuid, " + columns + " FROM " + table + " WHERE uuid IN (" + parameters + ");", preparedStatement -> {
+                for(int i = 0; i < batch.size(); i++)
+                    preparedStatement.setString(i + 1, batch.get(i).toString());
+            }, resultSet -> {
+                while (resultSet.next())
+                    consumer.accept(resultSet);
+            });
+        }
+    }
+
+    private static void deleteRecords(Query deleteQuery, Collection<UUID> uuids){
+        if(uuids.isEmpty())
+            return;
+
+        StatementHolder statementHolder = deleteQuery.getStatementHolder();
+        statementHolder.prepareBatch();
+
+        for(UUID uuid : uuids)
+            statementHolder.setString(uuid.toString()).addBatch();
+
+        statementHolder.execute(true);
+    }
+
+    private static int countRows(String table){
+        MutablePair<Integer, Void> rowsCount = new MutablePair<>(0, null);
+
+        SQLHelper.executeQuery("SELECT COUNT(*) FROM " + table + ";", resultSet -> {
+            if(resultSet.next())
+                rowsCount.setKey(resultSet.getInt(1));
+        }, ex -> {});
+
+        return rowsCount.getKey();
+    }
+
+    private static boolean isLegacyTable(String table){
+        // Old tables were keyed by a "world,x,y,z" location string.
+        return SQLHelper.doesConditionExist("SELECT * FROM sqlite_master WHERE type = 'table' AND name = '" + table +
+                "' AND sql LIKE '%location%';");
+    }
+
+    private static boolean hasInlinedItems(){
+        return SQLHelper.doesConditionExist("SELECT * FROM sqlite_master WHERE type = 'table' AND name = 'barrels' " +
+                "AND sql LIKE '%item VARCHAR%';");
+    }
+
+    private static boolean tableExists(String table){
+        return SQLHelper.doesConditionExist("SELECT * FROM sqlite_master WHERE type = 'table' AND name = '" + table + "';");
+    }
+
+    private static final String[] CREATE_TABLES_STATEMENTS = new String[] {
+            //Creating default spawners table
+            "CREATE TABLE IF NOT EXISTS spawners (world INTEGER, blockKey INTEGER, x INTEGER, y INTEGER, z INTEGER, " +
+                    "chunkX INTEGER, chunkZ INTEGER, stackAmount INTEGER, upgrade INTEGER, PRIMARY KEY (world, blockKey));",
+            "CREATE INDEX IF NOT EXISTS spawners_by_chunk ON spawners (world, chunkX, chunkZ);",
+            //Creating default barrels table
+            "CREATE TABLE IF NOT EXISTS barrels (world INTEGER, blockKey INTEGER, x INTEGER, y INTEGER, z INTEGER, " +
+                    "chunkX INTEGER, chunkZ INTEGER, stackAmount INTEGER, itemId INTEGER, PRIMARY KEY (world, blockKey));",
+            "CREATE INDEX IF NOT EXISTS barrels_by_chunk ON barrels (world, chunkX, chunkZ);"
+    };
+
+    private static void createTables(){
+        for(String createStatement : CREATE_TABLES_STATEMENTS)
+            SQLHelper.executeUpdate(createStatement);
+    }
+
+    private static void migrateLegacyTable(String table, String dataColumn, boolean renameTable) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        WildStackerPlugin.log("Migrating " + table + " to the new database format...");
+
+        String legacyTable = table + "_legacy";
+        // Rows that already exist are kept, so migrating the same table again never overrides newer data.
+        String insertStatement = "INSERT OR IGNORE INTO " + table + " (world, blockKey, x, y, z, chunkX, chunkZ, stackAmount, " +
+                (dataColumn.equals("item") ? "itemId" : "upgrade") + ") VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?);";
+        MutablePair<Integer, Void> migratedRows = new MutablePair<>(0, null);
+
+        // Renaming, creating and copying are done in one transaction. If any of the rows fails, nothing is applied,
+        // and the old table is kept as it is, so no data is lost and the migration is tried again on the next startup.
+        try {
+            SQLHelper.executeTransaction(connection -> {
+                try(Statement statement = connection.createStatement()) {
+                    if (renameTable)
+                        statement.executeUpdate("ALTER TABLE " + table + " RENAME TO " + legacyTable + ";");
+
+                    // Adding upgrade column if it doesn't exist
+                    if (table.equals("spawners") && !hasColumn(statement, legacyTable, "upgrade"))
+                        statement.executeUpdate("ALTER TABLE " + legacyTable + " ADD upgrade INTEGER DEFAULT 0;");
+
+                    for (String createStatement : CREATE_TABLES_STATEMENTS)
+                        statement.executeUpdate(createStatement);
+                }
+
+                try(PreparedStatement selectStatement = connection.prepareStatement("SELECT * FROM " + legacyTable + ";");
+                    PreparedStatement insertPreparedStatement = connection.prepareStatement(insertStatement);
+                    ResultSet resultSet = selectStatement.executeQuery()) {
+                    boolean locationKeyed = hasColumn(resultSet, "location");
+
+                    while (resultSet.next()) {
+                        String location = locationKeyed ? resultSet.getString("location") :
+                                WorldsDictionary.getName(resultSet.getInt("world")) + "," + resultSet.getInt("x") + "," +
+                                        resultSet.getInt("y") + "," + resultSet.getInt("z");
+                        try {
+                            String[] locationSections = location.split(",");
+                            int x = Integer.parseInt(locationSections[1]);
+                            int y = Integer.parseInt(locationSections[2]);
+                            int z = Integer.parseInt(locationSections[3]);
+                            insertPreparedStatement.setInt(1, locationKeyed ? WorldsDictionary.getId(locationSections[0]) : resultSet.getInt("world"));
+                            insertPreparedStatement.setLong(2, GeneralUtils.getBlockKey(x, y, z));
+                            insertPreparedStatement.setInt(3, x);
+                            insertPreparedStatement.setInt(4, y);
+                            insertPreparedStatement.setInt(5, z);
+                            insertPreparedStatement.setInt(6, x >> 4);
+                            insertPreparedStatement.setInt(7, z >> 4);
+                            insertPreparedStatement.setInt(8, resultSet.getInt("stackAmount"));
+                            if (dataColumn.equals("item"))
+                                insertPreparedStatement.setInt(9, ItemsDictionary.getId(resultSet.getString(dataColumn)));
+                            else
+                                insertPreparedStatement.setInt(9, resultSet.getInt(dataColumn));
+                            insertPreparedStatement.addBatch();
+                            migratedRows.setKey(migratedRows.getKey() + 1);
+                        } catch (Exception ex) {
+                            throw new SQLException("Couldn't migrate " + location + " of " + table + ".", ex);
+                        }
+                    }
+
+                    insertPreparedStatement.executeBatch();
+                }
+
+                // Dictionary inserts don't report their failures, so the migrated rows are checked against them.
+                checkReferences(connection, table, "world", "worlds");
+                if (dataColumn.equals("item"))
+                    checkReferences(connection, table, "itemId", "barrel_items");
+            });
+        }catch (SQLException ex){
+            // Ids that were given during the migration were rolled back as well.
+            WorldsDictionary.load();
+            ItemsDictionary.load();
+            WildStackerPlugin.log("&cFailed to migrate " + table + ", the old table was kept as it is.");
+            throw ex;
+        }
+
+        // The old table is only dropped once all of its rows were committed into the new table.
+        SQLHelper.executeUpdate("DROP TABLE " + legacyTable + ";");
+        SQLHelper.executeUpdate("VACUUM;");
+
+        WildStackerPlugin.log("Migrated " + migratedRows.getKey() + " " + table + ", took " + (System.currentTimeMillis() - startTime) + " ms.");
+    }
+
+    private static void checkReferences(Connection connection, String table, String column, String dictionaryTable) throws SQLException {
+        try(Statement statement = connection.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table + " WHERE " + column + " != 0 AND " +
+                    column + " NOT IN (SELECT id FROM " + dictionaryTable + ");")) {
+            if(resultSet.next() && resultSet.getInt(1) > 0)
+                throw new SQLException(resultSet.getInt(1) + " " + table + " reference missing " + dictionaryTable + ".");
+        }
+    }
+
+    private static boolean hasColumn(Statement statement, String table, String column) throws SQLException {
+        try(ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table + " LIMIT 0;")) {
+            return hasColumn(resultSet, column);
+        }
+    }
+
+    private static boolean hasColumn(ResultSet resultSet, String column) throws SQLException {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+
+        for(int i = 1; i <= metaData.getColumnCount(); i++){
+            if(metaData.getColumnName(i).equalsIgnoreCase(column))
+                return true;
+        }
+
+        return false;
+    }
+
+}
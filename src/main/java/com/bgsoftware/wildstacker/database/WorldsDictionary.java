@@ -0,0 +1,64 @@
+package com.bgsoftware.wildstacker.database;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class WorldsDictionary {
+
+    // Worlds are saved in the database by their ids instead of their names.
+    private static final Map<String, Integer> worldIds = new ConcurrentHashMap<>();
+    private static final Map<Integer, String> worldNames = new ConcurrentHashMap<>();
+    private static int lastWorldId = 0;
+
+    private WorldsDictionary(){
+
+    }
+
+    public static synchronized void load(){
+        // Loading again drops ids that were given in memory but never saved, such as ids of a rolled back transaction.
+        worldIds.clear();
+        worldNames.clear();
+        lastWorldId = 0;
+
+        SQLHelper.executeUpdate("CREATE TABLE IF NOT EXISTS worlds (id INTEGER PRIMARY KEY, name VARCHAR UNIQUE);");
+
+        SQLHelper.executeQuery("SELECT * FROM worlds;", resultSet -> {
+            while (resultSet.next())
+                register(resultSet.getInt("id"), resultSet.getString("name"));
+        });
+    }
+
+    public static int getId(String worldName){
+        Integer worldId = worldIds.get(worldName);
+        return worldId != null ? worldId : createId(worldName);
+    }
+
+    public static String getName(int worldId){
+        return worldNames.get(worldId);
+    }
+
+    private static synchronized int createId(String worldName){
+        Integer worldId = worldIds.get(worldName);
+
+        if(worldId != null)
+            return worldId;
+
+        int newWorldId = lastWorldId + 1;
+
+        Query.WORLD_INSERT.getStatementHolder()
+                .setInt(newWorldId)
+                .setString(worldName)
+                .execute(true);
+
+        register(newWorldId, worldName);
+
+        return newWorldId;
+    }
+
+    private static synchronized void register(int worldId, String worldName){
+        worldNames.put(worldId, worldName);
+        worldIds.put(worldName, worldId);
+        lastWorldId = Math.max(lastWorldId, worldId);
+    }
+
+}
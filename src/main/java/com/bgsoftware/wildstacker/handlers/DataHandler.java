@@ -9,32 +9,46 @@ import com.bgsoftware.wildstacker.api.objects.StackedObject;
 import com.bgsoftware.wildstacker.api.objects.StackedSpawner;
 import com.bgsoftware.wildstacker.api.objects.UnloadedStackedBarrel;
 import com.bgsoftware.wildstacker.api.objects.UnloadedStackedSpawner;
-import com.bgsoftware.wildstacker.database.SQLHelper;
+import com.bgsoftware.wildstacker.database.StorageBackend;
+import com.bgsoftware.wildstacker.database.StorageBackend_FlatFile;
+import com.bgsoftware.wildstacker.database.StorageBackend_Journal;
+import com.bgsoftware.wildstacker.database.StorageBackend_SQLite;
 import com.bgsoftware.wildstacker.listeners.ChunksListener;
 import com.bgsoftware.wildstacker.objects.WStackedBarrel;
 import com.bgsoftware.wildstacker.objects.WStackedSpawner;
-import com.bgsoftware.wildstacker.objects.WUnloadedStackedBarrel;
-import com.bgsoftware.wildstacker.objects.WUnloadedStackedSpawner;
 import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
+import com.bgsoftware.wildstacker.utils.chunks.UnloadedBarrelsCache;
+import com.bgsoftware.wildstacker.utils.chunks.UnloadedSpawnersCache;
+import com.bgsoftware.wildstacker.utils.entity.EntitiesGetter;
 import com.bgsoftware.wildstacker.utils.pair.Pair;
 import com.bgsoftware.wildstacker.utils.threads.Executor;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
-import org.bukkit.inventory.ItemStack;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.LivingEntity;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @SuppressWarnings({"WeakerAccess", "all"})
 public final class DataHandler {
@@ -48,36 +62,102 @@ public final class DataHandler {
     public final Map<Location, StackedBarrel> CACHED_BARRELS = new ConcurrentHashMap<>();
     public final Map<ChunkPosition, Set<StackedBarrel>> CACHED_BARRELS_BY_CHUNKS = new ConcurrentHashMap<>();
 
-    public final ReadWriteLock saveLock = new ReentrantReadWriteLock();
-    public final Set<StackedObject> OBJECTS_TO_SAVE = Sets.newConcurrentHashSet();
+    //Spawners that are linked to each entity, updated whenever the linked entities of spawners are changed
+    public final Map<UUID, Set<StackedSpawner>> LINKED_SPAWNERS = new ConcurrentHashMap<>();
+
+    public final Queue<StackedObject> OBJECTS_TO_SAVE = new ConcurrentLinkedQueue<>();
 
     //References for all the data from database
-    public final Map<UUID, Integer> CACHED_ITEMS_RAW = new ConcurrentHashMap<>();
-    public final Map<UUID, Pair<Integer, SpawnCause>> CACHED_ENTITIES_RAW = new ConcurrentHashMap<>();
-    public final Map<ChunkPosition, Map<Location, UnloadedStackedSpawner>> CACHED_SPAWNERS_RAW = new ConcurrentHashMap<>();
-    public final Map<ChunkPosition, Map<Location, UnloadedStackedBarrel>> CACHED_BARRELS_RAW = new ConcurrentHashMap<>();
+    public final UnloadedSpawnersCache CACHED_SPAWNERS_RAW = new UnloadedSpawnersCache();
+    public final UnloadedBarrelsCache CACHED_BARRELS_RAW = new UnloadedBarrelsCache();
 
     public final Set<UUID> CACHED_DEAD_ENTITIES = Collections.newSetFromMap(new ConcurrentHashMap<>());
 
+    //Data of chunks that was loaded from database in advance, when load-on-demand is enabled
+    public final Cache<ChunkPosition, Map<Location, UnloadedStackedSpawner>> PREFETCHED_SPAWNERS = CacheBuilder.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS).build();
+    public final Cache<ChunkPosition, Map<Location, UnloadedStackedBarrel>> PREFETCHED_BARRELS = CacheBuilder.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS).build();
+    private final Set<ChunkPosition> pendingPrefetches = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    //Chunks that were loaded before their data was loaded from the database, only accessed from the main thread
+    private final Set<ChunkPosition> pendingChunkLoads = new LinkedHashSet<>();
+
+    //Uuids of entities and items that have records in the database, so lookups of all the other entities are skipped
+    private static final Funnel<UUID> UUID_FUNNEL = (uuid, into) -> into.putLong(uuid.getMostSignificantBits())
+            .putLong(uuid.getLeastSignificantBits());
+    private volatile BloomFilter<UUID> storedEntities, storedItems;
+    //Records of entities and items that were loaded with their chunks, and are waiting for their objects to be created.
+    //The records are only deleted from the database once applied, so records of entities that are gone simply expire.
+    private final Cache<UUID, Pair<Integer, SpawnCause>> loadedEntitiesData = CacheBuilder.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS).build();
+    private final Cache<UUID, Integer> loadedItemsData = CacheBuilder.newBuilder()
+            .expireAfterWrite(60, TimeUnit.SECONDS).build();
+    //Entities and items that are waiting for their records to be loaded, so they are not stacked before that
+    private final Set<UUID> awaitingData = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    //Records that were applied, and are deleted from the database in batches
+    private final Queue<UUID> appliedEntities = new ConcurrentLinkedQueue<>(), appliedItems = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean appliedRecordsDirty = new AtomicBoolean(false);
+    private final AtomicInteger unloadedEntities = new AtomicInteger(0), unloadedItems = new AtomicInteger(0);
+
+    private StorageBackend storage;
+    private CompletableFuture<Void> storageWrites = CompletableFuture.completedFuture(null);
+    private boolean loadOnDemand = false;
+
     public DataHandler(WildStackerPlugin plugin){
         this.plugin = plugin;
 
+        for(World world : Bukkit.getWorlds()){
+            for(Chunk chunk : world.getLoadedChunks())
+                queueChunkLoad(chunk);
+        }
+
         Executor.sync(() -> {
+            // Settings are loaded after the data handler is created.
+            storage = createStorage(plugin.getSettings().databaseType);
+            Executor.data(() -> {
+                try {
+                    //Database.start(new File(plugin.getDataFolder(), "database.db"));
+                    storage.open(plugin);
+                    WildStackerPlugin.log("Using " + storage.getName() + " as the storage of spawners and barrels.");
+                    loadDatabase();
+                }catch(Exception ex){
+                    ex.printStackTrace();
+                    Bukkit.getScheduler().runTask(plugin, () -> Bukkit.getPluginManager().disablePlugin(plugin));
+                }
+            });
+        }, 1L);
+    }
+
+    public void clearDatabase(){
+        //Database.stop();
+        if(storage != null)
+            storage.close();
+    }
+
+    public StorageBackend getStorage(){
+        return storage;
+    }
+
+    public synchronized void writeToStorage(Consumer<StorageBackend> writeTask){
+        // Writes are chained, so they are applied to the storage in the same order they were made.
+        storageWrites = storageWrites.thenCompose(v -> Executor.dataFuture(() -> {
             try {
-                //Database.start(new File(plugin.getDataFolder(), "database.db"));
-                SQLHelper.createConnection(plugin);
-                loadDatabase();
-            }catch(Exception ex){
+                writeTask.accept(storage);
+            }catch (Exception ex){
                 ex.printStackTrace();
-                Bukkit.getScheduler().runTask(plugin, () -> Bukkit.getPluginManager().disablePlugin(plugin));
-                return;
             }
-        },1L);
+        }));
     }
 
-    public void clearDatabase(){
-        //Database.stop();
-        SQLHelper.close();
+    public void awaitStorageWrites(){
+        CompletableFuture<Void> storageWrites;
+
+        synchronized (this){
+            storageWrites = this.storageWrites;
+        }
+
+        storageWrites.join();
     }
 
     public void addStackedSpawner(StackedSpawner stackedSpawner){
@@ -88,10 +168,59 @@ public final class DataHandler {
 
     public void removeStackedSpawner(StackedSpawner stackedSpawner){
         CACHED_SPAWNERS.remove(stackedSpawner.getLocation());
-        Set<StackedSpawner> chunkSpawners = CACHED_SPAWNERS_BY_CHUNKS.get(new ChunkPosition(stackedSpawner.getLocation()));
-        if(chunkSpawners != null)
+        CACHED_SPAWNERS_BY_CHUNKS.computeIfPresent(new ChunkPosition(stackedSpawner.getLocation()), (s, chunkSpawners) -> {
             chunkSpawners.remove(stackedSpawner);
+            return chunkSpawners.isEmpty() ? null : chunkSpawners;
+        });
         ((WStackedSpawner) stackedSpawner).removeHologram();
+        stackedSpawner.setLinkedEntity(null);
+    }
+
+    public void updateLinkedSpawner(StackedSpawner stackedSpawner, LivingEntity oldLinkedEntity, LivingEntity newLinkedEntity){
+        if(oldLinkedEntity != null) {
+            LINKED_SPAWNERS.computeIfPresent(oldLinkedEntity.getUniqueId(), (uuid, linkedSpawners) -> {
+                linkedSpawners.remove(stackedSpawner);
+                return linkedSpawners.isEmpty() ? null : linkedSpawners;
+            });
+        }
+
+        if(newLinkedEntity != null) {
+            LINKED_SPAWNERS.computeIfAbsent(newLinkedEntity.getUniqueId(),
+                    uuid -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(stackedSpawner);
+        }
+    }
+
+    public void removeLinkedEntity(UUID uuid){
+        Set<StackedSpawner> linkedSpawners = LINKED_SPAWNERS.remove(uuid);
+        if(linkedSpawners != null)
+            linkedSpawners.forEach(stackedSpawner -> stackedSpawner.setLinkedEntity(null));
+    }
+
+    // Only the chunks that overlap the range are checked, so the amount of loaded spawners doesn't matter.
+    public List<StackedSpawner> getNearbySpawners(Location location, int range){
+        List<StackedSpawner> nearbySpawners = new ArrayList<>();
+
+        int minX = location.getBlockX() - range, minY = location.getBlockY() - range, minZ = location.getBlockZ() - range;
+        int maxX = location.getBlockX() + range, maxY = location.getBlockY() + range, maxZ = location.getBlockZ() + range;
+        String worldName = location.getWorld().getName();
+
+        for(int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++){
+            for(int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++){
+                Set<StackedSpawner> chunkSpawners = CACHED_SPAWNERS_BY_CHUNKS.get(new ChunkPosition(worldName, chunkX, chunkZ));
+
+                if(chunkSpawners == null)
+                    continue;
+
+                for(StackedSpawner stackedSpawner : chunkSpawners){
+                    Location loc = stackedSpawner.getLocation();
+                    if(loc.getBlockX() >= minX && loc.getBlockX() <= maxX && loc.getBlockY() >= minY &&
+                            loc.getBlockY() <= maxY && loc.getBlockZ() >= minZ && loc.getBlockZ() <= maxZ)
+                        nearbySpawners.add(stackedSpawner);
+                }
+            }
+        }
+
+        return nearbySpawners;
     }
 
     public void addStackedBarrel(StackedBarrel stackedBarrel){
@@ -102,9 +231,10 @@ public final class DataHandler {
 
     public void removeStackedBarrel(StackedBarrel stackedBarrel){
         CACHED_BARRELS.remove(stackedBarrel.getLocation());
-        Set<StackedBarrel> chunkBarrels = CACHED_BARRELS_BY_CHUNKS.get(new ChunkPosition(stackedBarrel.getLocation()));
-        if(chunkBarrels != null)
+        CACHED_BARRELS_BY_CHUNKS.computeIfPresent(new ChunkPosition(stackedBarrel.getLocation()), (s, chunkBarrels) -> {
             chunkBarrels.remove(stackedBarrel);
+            return chunkBarrels.isEmpty() ? null : chunkBarrels;
+        });
         stackedBarrel.removeDisplayBlock();
         ((WStackedBarrel) stackedBarrel).removeHologram();
     }
@@ -118,29 +248,177 @@ public final class DataHandler {
         return stackedObjects;
     }
 
-    private void loadDatabase(){
-        //Creating default spawners table
-        SQLHelper.executeUpdate("CREATE TABLE IF NOT EXISTS spawners (location VARCHAR PRIMARY KEY, stackAmount INTEGER, upgrade INTEGER);");
-        // Adding upgrade column if it doesn't exist
-        addColumnIfNotExists("upgrade", "spawners", "0", "INTEGER");
+    public void queueChunkLoad(Chunk chunk){
+        pendingChunkLoads.add(new ChunkPosition(chunk));
+    }
 
-        //Creating default barrels table
-        SQLHelper.executeUpdate("CREATE TABLE IF NOT EXISTS barrels (location VARCHAR PRIMARY KEY, stackAmount INTEGER, item VARCHAR);");
+    public void dequeueChunkLoad(Chunk chunk){
+        pendingChunkLoads.remove(new ChunkPosition(chunk));
+    }
 
-        long startTime = System.currentTimeMillis();
+    public void loadChunk(Chunk chunk){
+        ChunkPosition chunkPosition = new ChunkPosition(chunk);
 
-        if(plugin.getSettings().storeEntities) {
-            WildStackerPlugin.log("Starting to load entities...");
+        boolean loadSpawners = loadOnDemand && !storage.isLoadedByChunks() && !CACHED_SPAWNERS_RAW.containsChunk(chunkPosition) &&
+                PREFETCHED_SPAWNERS.getIfPresent(chunkPosition) == null;
+        boolean loadBarrels = loadOnDemand && !storage.isLoadedByChunks() && !CACHED_BARRELS_RAW.containsChunk(chunkPosition) &&
+                PREFETCHED_BARRELS.getIfPresent(chunkPosition) == null;
+
+        boolean loadLegacyData = storage.hasLegacyData(chunkPosition);
+
+        List<Entity> entitiesToLoad = new ArrayList<>(), itemsToLoad = new ArrayList<>();
+        collectStoredRecords(chunk, entitiesToLoad, itemsToLoad);
+
+        if(!loadSpawners && !loadBarrels && !loadLegacyData && entitiesToLoad.isEmpty() && itemsToLoad.isEmpty()){
+            plugin.getSystemManager().handleChunkLoad(chunk);
+            return;
+        }
+
+        // The chunk is already waiting for its data.
+        if(!pendingChunkLoads.add(chunkPosition))
+            return;
+
+        List<UUID> entityUUIDs = getUUIDs(entitiesToLoad), itemUUIDs = getUUIDs(itemsToLoad);
+        awaitingData.addAll(entityUUIDs);
+        awaitingData.addAll(itemUUIDs);
+
+        // The data is loaded on the database threads, and the chunk is handled once it's ready.
+        Executor.data(() -> {
+            if(loadLegacyData)
+                storage.loadLegacyData(chunkPosition);
+
+            Map<Location, UnloadedStackedSpawner> chunkSpawners = loadSpawners ? storage.loadSpawners(chunkPosition) : null;
+            Map<Location, UnloadedStackedBarrel> chunkBarrels = loadBarrels ? storage.loadBarrels(chunkPosition) : null;
+            Map<UUID, Pair<Integer, SpawnCause>> entitiesData = entityUUIDs.isEmpty() ? null : storage.loadEntities(entityUUIDs);
+            Map<UUID, Integer> itemsData = itemUUIDs.isEmpty() ? null : storage.loadItems(itemUUIDs);
+            Executor.sync(() -> {
+                // The records are kept even if the chunk was unloaded meanwhile, and expire if their objects are never created.
+                if(entitiesData != null)
+                    applyEntitiesData(entitiesData);
+
+                if(itemsData != null)
+                    applyItemsData(itemsData);
+
+                // The objects can be stacked now, so they are checked again.
+                awaitingData.removeAll(entityUUIDs);
+                awaitingData.removeAll(itemUUIDs);
+                markValidDirty(entitiesToLoad);
+                markValidDirty(itemsToLoad);
+
+                // The chunk was unloaded while its data was loaded.
+                if(!pendingChunkLoads.remove(chunkPosition))
+                    return;
+
+                if(chunkSpawners != null)
+                    PREFETCHED_SPAWNERS.put(chunkPosition, chunkSpawners);
+
+                if(chunkBarrels != null)
+                    PREFETCHED_BARRELS.put(chunkPosition, chunkBarrels);
+
+                World world = Bukkit.getWorld(chunkPosition.getWorld());
+                if(world != null && world.isChunkLoaded(chunkPosition.getX(), chunkPosition.getZ()))
+                    plugin.getSystemManager().handleChunkLoad(world.getChunkAt(chunkPosition.getX(), chunkPosition.getZ()));
+            });
+        });
+    }
+
+    // Records are loaded together with their chunks, so entities and items never query the database themselves.
+    public Pair<Integer, SpawnCause> loadEntityData(UUID uuid){
+        Pair<Integer, SpawnCause> entityData = loadedEntitiesData.size() == 0 ? null : loadedEntitiesData.asMap().remove(uuid);
+
+        if(entityData != null)
+            markApplied(appliedEntities, uuid);
+
+        return entityData;
+    }
+
+    public Integer loadItemData(UUID uuid){
+        Integer itemData = loadedItemsData.size() == 0 ? null : loadedItemsData.asMap().remove(uuid);
+
+        if(itemData != null)
+            markApplied(appliedItems, uuid);
+
+        return itemData;
+    }
+
+    public boolean isAwaitingData(UUID uuid){
+        return !awaitingData.isEmpty() && awaitingData.contains(uuid);
+    }
+
+    public int getUnloadedEntitiesAmount(){
+        return unloadedEntities.get();
+    }
+
+    public int getUnloadedItemsAmount(){
+        return unloadedItems.get();
+    }
+
+    public boolean isLoadOnDemand(){
+        return loadOnDemand;
+    }
+
+    // The database is never queried from here, as the data of chunks is loaded in advance by loadChunk.
+    // Storages that are loaded by chunks read the data from the chunks themselves, which is done right away.
+    public Map<Location, UnloadedStackedSpawner> loadChunkSpawners(ChunkPosition chunkPosition){
+        Map<Location, UnloadedStackedSpawner> chunkSpawners = PREFETCHED_SPAWNERS.getIfPresent(chunkPosition);
 
-            SQLHelper.executeQuery("SELECT * FROM entities;", resultSet -> {
-                while (resultSet.next()) {
-                    int stackAmount = resultSet.getInt("stackAmount");
-                    SpawnCause spawnCause = SpawnCause.matchCause(resultSet.getString("spawnCause"));
-                    UUID uuid = UUID.fromString(resultSet.getString("uuid"));
-                    CACHED_ENTITIES_RAW.put(uuid, new Pair<>(stackAmount, spawnCause));
+        if(chunkSpawners != null){
+            PREFETCHED_SPAWNERS.invalidate(chunkPosition);
+            return chunkSpawners;
+        }
+
+        return storage.isLoadedByChunks() ? storage.loadSpawners(chunkPosition) : null;
+    }
+
+    public Map<Location, UnloadedStackedBarrel> loadChunkBarrels(ChunkPosition chunkPosition){
+        Map<Location, UnloadedStackedBarrel> chunkBarrels = PREFETCHED_BARRELS.getIfPresent(chunkPosition);
+
+        if(chunkBarrels != null){
+            PREFETCHED_BARRELS.invalidate(chunkPosition);
+            return chunkBarrels;
+        }
+
+        return storage.isLoadedByChunks() ? storage.loadBarrels(chunkPosition) : null;
+    }
+
+    public void prefetchChunk(World world, int chunkX, int chunkZ){
+        if(storage.isLoadedByChunks())
+            return;
+
+        ChunkPosition chunkPosition = new ChunkPosition(world.getName(), chunkX, chunkZ);
+
+        if(CACHED_SPAWNERS_RAW.containsChunk(chunkPosition) || PREFETCHED_SPAWNERS.getIfPresent(chunkPosition) != null ||
+                !pendingPrefetches.add(chunkPosition))
+            return;
+
+        Executor.data(() -> {
+            Map<Location, UnloadedStackedSpawner> chunkSpawners = storage.loadSpawners(chunkPosition);
+            Map<Location, UnloadedStackedBarrel> chunkBarrels = storage.loadBarrels(chunkPosition);
+            Executor.sync(() -> {
+                pendingPrefetches.remove(chunkPosition);
+                // The chunk was loaded while its data was fetched, so the data might already be outdated.
+                if(!world.isChunkLoaded(chunkX, chunkZ)) {
+                    PREFETCHED_SPAWNERS.put(chunkPosition, chunkSpawners);
+                    PREFETCHED_BARRELS.put(chunkPosition, chunkBarrels);
                 }
-            }, ex -> {});
+            });
+        });
+    }
 
+    private void loadDatabase(){
+        loadOnDemand = plugin.getSettings().databaseLoadOnDemand || storage.isLoadedByChunks();
+
+        long startTime = System.currentTimeMillis();
+
+        if(plugin.getSettings().storeEntities) {
+            WildStackerPlugin.log("Starting to load entities...");
+            int entitiesAmount = storage.countEntities();
+            if(entitiesAmount > 0) {
+                BloomFilter<UUID> storedEntities = createFilter(entitiesAmount);
+                storage.loadEntities(storedEntities::put);
+                unloadedEntities.set(entitiesAmount);
+                this.storedEntities = storedEntities;
+            }
             WildStackerPlugin.log("Loading entities done! Took " + (System.currentTimeMillis() - startTime) + " ms.");
         }
 
@@ -148,122 +426,169 @@ public final class DataHandler {
 
         if(plugin.getSettings().storeItems) {
             WildStackerPlugin.log("Starting to load items...");
+            int itemsAmount = storage.countItems();
+            if(itemsAmount > 0) {
+                BloomFilter<UUID> storedItems = createFilter(itemsAmount);
+                storage.loadItems(storedItems::put);
+                unloadedItems.set(itemsAmount);
+                this.storedItems = storedItems;
+            }
+            WildStackerPlugin.log("Loading items done! Took " + (System.currentTimeMillis() - startTime) + " ms.");
+        }
 
-            SQLHelper.executeQuery("SELECT * FROM items;", resultSet -> {
-                while (resultSet.next()) {
-                    int stackAmount = resultSet.getInt("stackAmount");
-                    UUID uuid = UUID.fromString(resultSet.getString("uuid"));
-                    CACHED_ITEMS_RAW.put(uuid, stackAmount);
-                }
-            }, ex -> {});
+        if(loadOnDemand) {
+            WildStackerPlugin.log("Spawners and barrels will be loaded on demand.");
+        }
+        else {
+            startTime = System.currentTimeMillis();
+            WildStackerPlugin.log("Starting to load spawners...");
 
-            WildStackerPlugin.log("Loading items done! Took " + (System.currentTimeMillis() - startTime) + " ms.");
+            storage.loadSpawners(CACHED_SPAWNERS_RAW::put);
+
+            WildStackerPlugin.log("Loading spawners done! Took " + (System.currentTimeMillis() - startTime) + " ms.");
+            startTime = System.currentTimeMillis();
+            WildStackerPlugin.log("Starting to load barrels...");
+
+            storage.loadBarrels(CACHED_BARRELS_RAW::put);
+
+            WildStackerPlugin.log("Loading barrels done! Took " + (System.currentTimeMillis() - startTime) + " ms.");
         }
 
-        startTime = System.currentTimeMillis();
-        WildStackerPlugin.log("Starting to load spawners...");
-
-        SQLHelper.executeQuery("SELECT * FROM spawners;", resultSet -> {
-            while (resultSet.next()) {
-                String location = resultSet.getString("location");
-                String[] locationSections = location.split(",");
-                World blockWorld = Bukkit.getWorld(locationSections[0]);
-
-                String exceptionReason = "Null world.";
-
-                if(blockWorld != null) {
-                    Location blockLocation = new Location(
-                            blockWorld,
-                            Integer.valueOf(locationSections[1]),
-                            Integer.valueOf(locationSections[2]),
-                            Integer.valueOf(locationSections[3])
-                    );
-
-
-                    try {
-                        int stackAmount = resultSet.getInt("stackAmount");
-                        int upgradeId = resultSet.getInt("upgrade");
-                        CACHED_SPAWNERS_RAW.computeIfAbsent(new ChunkPosition(blockLocation), s -> Maps.newConcurrentMap())
-                                .put(blockLocation, new WUnloadedStackedSpawner(blockLocation, stackAmount, upgradeId));
-                        continue;
-                    }catch(Exception ex){
-                        exceptionReason = "Exception was thrown.";
-                    }
-                }
+        Executor.sync(() -> {
+            ChunksListener.loadedData = true;
 
-                WildStackerPlugin.log("Couldn't load spawner: " + location);
-                WildStackerPlugin.log(exceptionReason);
+            List<ChunkPosition> chunksToLoad = new ArrayList<>(pendingChunkLoads);
+            pendingChunkLoads.clear();
 
-                if(exceptionReason.contains("Null") && plugin.getSettings().deleteInvalidWorlds) {
-                    SQLHelper.executeUpdate("DELETE FROM spawners WHERE location = '" + location + "';");
-                    WildStackerPlugin.log("Deleted spawner (" + location + ") from database.");
-                }
+            for(ChunkPosition chunkPosition : chunksToLoad){
+                World world = Bukkit.getWorld(chunkPosition.getWorld());
+                if(world != null && world.isChunkLoaded(chunkPosition.getX(), chunkPosition.getZ()))
+                    loadChunk(world.getChunkAt(chunkPosition.getX(), chunkPosition.getZ()));
             }
         });
+    }
 
-        WildStackerPlugin.log("Loading spawners done! Took " + (System.currentTimeMillis() - startTime) + " ms.");
-        startTime = System.currentTimeMillis();
-        WildStackerPlugin.log("Starting to load barrels...");
-
-        SQLHelper.executeQuery("SELECT * FROM barrels;", resultSet -> {
-            while (resultSet.next()) {
-                String location = resultSet.getString("location");
-                String[] locationSections = location.split(",");
-                World blockWorld = Bukkit.getWorld(locationSections[0]);
-
-                String exceptionReason = "Null world.";
-
-                if(blockWorld != null) {
-                    Location blockLocation = new Location(
-                            blockWorld,
-                            Integer.valueOf(locationSections[1]),
-                            Integer.valueOf(locationSections[2]),
-                            Integer.valueOf(locationSections[3])
-                    );
-
-                    try {
-                        int stackAmount = resultSet.getInt("stackAmount");
-                        ItemStack barrelItem = resultSet.getString("item").isEmpty() ? null :
-                                plugin.getNMSAdapter().deserialize(resultSet.getString("item"));
-                        CACHED_BARRELS_RAW.computeIfAbsent(new ChunkPosition(blockLocation), s -> Maps.newConcurrentMap())
-                            .put(blockLocation, new WUnloadedStackedBarrel(blockLocation, stackAmount, barrelItem));
-                        continue;
-                    } catch (Exception ex) {
-                        exceptionReason = "Exception was thrown.";
-                    }
-                }
+    private void collectStoredRecords(Chunk chunk, List<Entity> entitiesToLoad, List<Entity> itemsToLoad){
+        BloomFilter<UUID> storedEntities = this.storedEntities, storedItems = this.storedItems;
 
-                WildStackerPlugin.log("Couldn't load barrel: " + location);
-                WildStackerPlugin.log(exceptionReason);
+        if(storedEntities == null && storedItems == null)
+            return;
 
-                if(exceptionReason.contains("Null") && plugin.getSettings().deleteInvalidWorlds) {
-                    SQLHelper.executeUpdate("DELETE FROM barrels WHERE location = '" + location + "';");
-                    WildStackerPlugin.log("Deleted barrel (" + location + ") from database.");
-                }
+        for(Entity entity : chunk.getEntities()){
+            UUID uuid = entity.getUniqueId();
+            if(entity instanceof Item){
+                if(storedItems != null && storedItems.mightContain(uuid))
+                    itemsToLoad.add(entity);
+            }
+            else if(entity instanceof LivingEntity){
+                if(storedEntities != null && storedEntities.mightContain(uuid))
+                    entitiesToLoad.add(entity);
+            }
+        }
+    }
+
+    private void applyEntitiesData(Map<UUID, Pair<Integer, SpawnCause>> entitiesData){
+        entitiesData.forEach((uuid, entityData) -> {
+            StackedEntity stackedEntity = CACHED_ENTITIES.get(uuid);
+
+            // The entity was already loaded before its record was ready.
+            if(stackedEntity != null){
+                stackedEntity.setStackAmount(entityData.getKey(), false);
+                stackedEntity.setSpawnCause(entityData.getValue());
+                markApplied(appliedEntities, uuid);
+            }
+            else{
+                loadedEntitiesData.put(uuid, entityData);
             }
         });
+    }
 
-        WildStackerPlugin.log("Loading barrels done! Took " + (System.currentTimeMillis() - startTime) + " ms.");
+    private void applyItemsData(Map<UUID, Integer> itemsData){
+        itemsData.forEach((uuid, itemData) -> {
+            StackedItem stackedItem = CACHED_ITEMS.get(uuid);
 
-        ChunksListener.loadedData = true;
+            // The item was already loaded before its record was ready.
+            if(stackedItem != null){
+                stackedItem.setStackAmount(itemData, false);
+                markApplied(appliedItems, uuid);
+            }
+            else{
+                loadedItemsData.put(uuid, itemData);
+            }
+        });
+    }
 
-        for(World world : Bukkit.getWorlds()){
-            for(Chunk chunk : world.getLoadedChunks())
-                plugin.getSystemManager().handleChunkLoad(chunk);
+    private void markApplied(Queue<UUID> appliedRecords, UUID uuid){
+        appliedRecords.add(uuid);
+
+        // All the records that were applied until the task runs are deleted together.
+        if(appliedRecordsDirty.compareAndSet(false, true))
+            writeToStorage(this::deleteAppliedRecords);
+    }
+
+    private void deleteAppliedRecords(StorageBackend storage){
+        appliedRecordsDirty.set(false);
+
+        List<UUID> entities = drain(appliedEntities), items = drain(appliedItems);
+
+        if(!entities.isEmpty()) {
+            storage.deleteEntities(entities);
+            unloadedEntities.addAndGet(-entities.size());
+        }
+
+        if(!items.isEmpty()) {
+            storage.deleteItems(items);
+            unloadedItems.addAndGet(-items.size());
         }
     }
 
-    private static void addColumnIfNotExists(String column, String table, String def, String type) {
-        String defaultSection = " DEFAULT " + def;
+    private static List<UUID> drain(Queue<UUID> queue){
+        List<UUID> uuids = new ArrayList<>();
+        UUID uuid;
 
-        String statementStr = "ALTER TABLE " + table + " ADD " + column + " " + type + defaultSection + ";";
+        while((uuid = queue.poll()) != null)
+            uuids.add(uuid);
 
-        SQLHelper.executeUpdate(statementStr, ex -> {
-            if(!ex.getMessage().toLowerCase().contains("duplicate")) {
-                System.out.println("Statement: " + statementStr);
-                ex.printStackTrace();
-            }
-        });
+        return uuids;
+    }
+
+    private static List<UUID> getUUIDs(List<Entity> entities){
+        List<UUID> uuids = new ArrayList<>(entities.size());
+        entities.forEach(entity -> uuids.add(entity.getUniqueId()));
+        return uuids;
+    }
+
+    private static void markValidDirty(List<Entity> entities){
+        for(Entity entity : entities) {
+            if (entity.isValid())
+                EntitiesGetter.markDirty(entity);
+        }
+    }
+
+    private static BloomFilter<UUID> createFilter(int expectedInsertions){
+        // With 1% of false positives, the filter takes less than 10 bits for each record.
+        return BloomFilter.create(UUID_FUNNEL, expectedInsertions, 0.01);
+    }
+
+    private StorageBackend createStorage(String type){
+        switch (type){
+            case "CHUNK":
+                if(plugin.getNMSAdapter().isChunkDataSupported())
+                    return new StorageBackend_Chunks();
+                WildStackerPlugin.log("Chunks cannot store data in this server version, using SQLite instead.");
+                return new StorageBackend_SQLite();
+            case "FLATFILE":
+                return new StorageBackend_FlatFile(true);
+            case "JOURNAL":
+                return new StorageBackend_Journal();
+            case "MEMORY":
+                return new StorageBackend_FlatFile(false);
+            case "SQLITE":
+                return new StorageBackend_SQLite();
+            default:
+                WildStackerPlugin.log("Invalid database type " + type + ", using SQLite instead.");
+                return new StorageBackend_SQLite();
+        }
     }
 
 }
@@ -26,12 +26,14 @@ import com.bgsoftware.wildstacker.utils.data.structures.Fast3EnumsArray;
 import com.bgsoftware.wildstacker.utils.data.structures.FastEnumArray;
 import com.bgsoftware.wildstacker.utils.data.structures.FastEnumMap;
 import com.bgsoftware.wildstacker.utils.entity.StackCheck;
+import com.bgsoftware.wildstacker.utils.entity.StackCheckPipeline;
 import com.bgsoftware.wildstacker.utils.files.FileUtils;
 import com.bgsoftware.wildstacker.utils.items.ItemBuilder;
 import com.bgsoftware.wildstacker.utils.names.NameBuilder;
 import com.bgsoftware.wildstacker.utils.names.NamePlaceholder;
 import com.bgsoftware.wildstacker.utils.pair.Pair;
 import com.bgsoftware.wildstacker.utils.particles.ParticleWrapper;
+import com.bgsoftware.wildstacker.utils.threads.StackService;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
 import org.bukkit.Sound;
@@ -61,12 +63,14 @@ public final class SettingsHandler {
             "break-slots", "manage-menu", "break-charge", "place-charge", "spawners-override.spawn-conditions", "spawner-upgrades.ladders" };
 
     //Global settings
-    public final String giveItemName;
+    public final String giveItemName, databaseType;
     public final ItemStack inspectTool, simulateTool;
-    public final boolean deleteInvalidWorlds, killTaskStackedEntities, killTaskUnstackedEntities,
+    public final boolean deleteInvalidWorlds, databaseLoadOnDemand, killTaskStackedEntities, killTaskUnstackedEntities,
             killTaskStackedItems, killTaskUnstackedItems, killTaskSyncClearLagg;
     public final Map<String, String> customNames;
     public final long killTaskInterval;
+    public final int databasePrefetchRadius, databaseAutosaveInterval;
+    public final double databaseAutosaveBudget, stackingBudget;
     public final Fast2EnumsArray<EntityType, SpawnCause> killTaskEntitiesWhitelist, killTaskEntitiesBlacklist;
     public final FastEnumArray<Material> killTaskItemsWhitelist, killTaskItemsBlacklist;
     public final List<String> killTaskEntitiesWorlds, killTaskItemsWorlds;
@@ -170,7 +174,13 @@ public final class SettingsHandler {
         simulateTool = new ItemBuilder(Material.valueOf(cfg.getString("inspect-tool.type")), cfg.getInt("inspect-tool.data", 0))
                 .withName(cfg.getString("simulate-tool.name"))
                 .withLore(cfg.getStringList("simulate-tool.lore")).build();
+        databaseType = cfg.getString("database.type", "SQLITE").toUpperCase();
         deleteInvalidWorlds = cfg.getBoolean("database.delete-invalid-worlds", false);
+        databaseLoadOnDemand = cfg.getBoolean("database.load-on-demand", false);
+        databasePrefetchRadius = cfg.getInt("database.prefetch-radius", 2);
+        databaseAutosaveInterval = cfg.getInt("database.autosave.interval", 300);
+        databaseAutosaveBudget = cfg.getDouble("database.autosave.budget", 2.0);
+        stackingBudget = cfg.getDouble("stacking-budget", 5.0);
         killTaskInterval = cfg.getLong("kill-task.interval", 300);
         killTaskStackedEntities = cfg.getBoolean("kill-task.stacked-entities", true);
         killTaskUnstackedEntities = cfg.getBoolean("kill-task.unstacked-entities", true);
@@ -189,7 +199,7 @@ public final class SettingsHandler {
         loadCustomNames(plugin);
 
         itemsStackingEnabled = cfg.getBoolean("items.enabled", true);
-        itemsMergeRadius = FastEnumMap.fromSection(cfg.getConfigurationSection("items.merge-radius"), Material.class);
+        itemsMergeRadius = FastEnumMap.fromSection(clampMergeRadius(cfg.getConfigurationSection("items.merge-radius")), Material.class);
         itemsParticlesEnabled = cfg.getBoolean("items.particles", true);
         itemsParticles = getParticles(plugin, "items");
         itemsDisabledWorlds = cfg.getStringList("items.disabled-worlds");
@@ -217,7 +227,7 @@ public final class SettingsHandler {
         storeItems = cfg.getBoolean("items.store-items", true);
 
         entitiesStackingEnabled = cfg.getBoolean("entities.enabled", true);
-        entitiesMergeRadius = Fast2EnumsMap.fromSectionToInt(cfg.getConfigurationSection("entities.merge-radius"),
+        entitiesMergeRadius = Fast2EnumsMap.fromSectionToInt(clampMergeRadius(cfg.getConfigurationSection("entities.merge-radius")),
                 EntityType.class, SpawnCause.class);
         entitiesParticlesEnabled = cfg.getBoolean("entities.particles", true);
         entitiesParticles = getParticles(plugin, "entities");
@@ -481,6 +491,8 @@ public final class SettingsHandler {
             check.setEnabled(cfg.getBoolean("entities.stack-checks." + check.name(), false));
         }
 
+        StackCheckPipeline.compile();
+
         for(StackSplit split : StackSplit.values()) {
             split.setEnabled(cfg.getBoolean("entities.stack-split." + split.name(), false));
         }
@@ -517,6 +529,21 @@ public final class SettingsHandler {
 
     private YamlConfiguration particlesYaml = null;
 
+    private static ConfigurationSection clampMergeRadius(ConfigurationSection section){
+        // Regions are stacked in parallel, which is only safe when objects never reach half a region away.
+        if(section != null){
+            for(String key : section.getKeys(false)){
+                if(section.getInt(key) > StackService.MAX_MERGE_RADIUS){
+                    WildStackerPlugin.log("&cMerge radius " + section.getCurrentPath() + "." + key + " is too large, using " +
+                            StackService.MAX_MERGE_RADIUS + " instead.");
+                    section.set(key, StackService.MAX_MERGE_RADIUS);
+                }
+            }
+        }
+
+        return section;
+    }
+
     private List<ParticleWrapper> getParticles(WildStackerPlugin plugin, String sectionPath){
         if(particlesYaml == null){
             File file = new File(plugin.getDataFolder(), "particles.yml");
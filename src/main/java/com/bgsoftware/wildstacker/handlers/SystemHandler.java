@@ -15,18 +15,21 @@ import com.bgsoftware.wildstacker.api.objects.StackedSpawner;
 import com.bgsoftware.wildstacker.api.objects.UnloadedStackedBarrel;
 import com.bgsoftware.wildstacker.api.objects.UnloadedStackedSpawner;
 import com.bgsoftware.wildstacker.api.spawning.SpawnCondition;
-import com.bgsoftware.wildstacker.database.Query;
 import com.bgsoftware.wildstacker.hooks.DataSerializer_Default;
 import com.bgsoftware.wildstacker.hooks.IDataSerializer;
 import com.bgsoftware.wildstacker.objects.WStackedBarrel;
 import com.bgsoftware.wildstacker.objects.WStackedEntity;
 import com.bgsoftware.wildstacker.objects.WStackedItem;
+import com.bgsoftware.wildstacker.objects.WStackedObject;
 import com.bgsoftware.wildstacker.objects.WStackedSnapshot;
 import com.bgsoftware.wildstacker.objects.WStackedSpawner;
 import com.bgsoftware.wildstacker.objects.WUnloadedStackedBarrel;
 import com.bgsoftware.wildstacker.objects.WUnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.tasks.AutoSaveTask;
+import com.bgsoftware.wildstacker.tasks.ChunksPrefetchTask;
 import com.bgsoftware.wildstacker.tasks.ItemsMerger;
 import com.bgsoftware.wildstacker.tasks.KillTask;
+import com.bgsoftware.wildstacker.tasks.StackBudgetTask;
 import com.bgsoftware.wildstacker.tasks.StackTask;
 import com.bgsoftware.wildstacker.utils.GeneralUtils;
 import com.bgsoftware.wildstacker.utils.ServerVersion;
@@ -39,7 +42,6 @@ import com.bgsoftware.wildstacker.utils.items.ItemUtils;
 import com.bgsoftware.wildstacker.utils.legacy.Materials;
 import com.bgsoftware.wildstacker.utils.pair.Pair;
 import com.bgsoftware.wildstacker.utils.threads.Executor;
-import com.google.common.collect.Maps;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
@@ -94,12 +96,15 @@ public final class SystemHandler implements SystemManager {
             KillTask.start();
             StackTask.start();
             ItemsMerger.start();
+            ChunksPrefetchTask.start();
         }, 1L);
 
         //Start the auto-clear
         Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::performCacheClear, 100L, 100L);
         //Start the auto-save
-        Bukkit.getScheduler().runTaskTimer(plugin, this::performCacheSave, 300L, 300L);
+        AutoSaveTask.start();
+        //Start the stacking scheduler
+        StackBudgetTask.start();
     }
 
     /*
@@ -134,7 +139,7 @@ public final class SystemHandler implements SystemManager {
         //Entity wasn't found, creating a new object
         stackedEntity = new WStackedEntity(livingEntity);
 
-        Pair<Integer, SpawnCause> entityData = dataHandler.CACHED_ENTITIES_RAW.remove(livingEntity.getUniqueId());
+        Pair<Integer, SpawnCause> entityData = dataHandler.loadEntityData(livingEntity.getUniqueId());
         if(entityData != null) {
             stackedEntity.setStackAmount(entityData.getKey(), false);
             stackedEntity.setSpawnCause(entityData.getValue());
@@ -205,7 +210,7 @@ public final class SystemHandler implements SystemManager {
         if(stackedItem.isCached())
             dataHandler.CACHED_ITEMS.put(stackedItem.getUniqueId(), stackedItem);
 
-        Integer entityData = dataHandler.CACHED_ITEMS_RAW.remove(item.getUniqueId());
+        Integer entityData = dataHandler.loadItemData(item.getUniqueId());
         if(entityData != null) {
             stackedItem.setStackAmount(entityData, false);
         }
@@ -312,7 +317,7 @@ public final class SystemHandler implements SystemManager {
         List<UnloadedStackedSpawner> spawners = new ArrayList<>();
 
         dataHandler.CACHED_SPAWNERS.values().forEach(stackedSpawner -> spawners.add(new WUnloadedStackedSpawner(stackedSpawner)));
-        dataHandler.CACHED_SPAWNERS_RAW.values().forEach(map -> spawners.addAll(map.values()));
+        spawners.addAll(dataHandler.CACHED_SPAWNERS_RAW.values());
 
         return spawners;
     }
@@ -338,7 +343,7 @@ public final class SystemHandler implements SystemManager {
         List<UnloadedStackedBarrel> barrels = new ArrayList<>();
 
         dataHandler.CACHED_BARRELS.values().forEach(stackedBarrel -> barrels.add(new WUnloadedStackedBarrel(stackedBarrel)));
-        dataHandler.CACHED_BARRELS_RAW.values().forEach(map -> barrels.addAll(map.values()));
+        barrels.addAll(dataHandler.CACHED_BARRELS_RAW.values());
 
         return barrels;
     }
@@ -418,64 +423,80 @@ public final class SystemHandler implements SystemManager {
             return;
         }
 
-        try{
-            dataHandler.saveLock.writeLock().lock();
-
-            dataHandler.OBJECTS_TO_SAVE.forEach(stackedObject -> {
-                if (stackedObject instanceof StackedEntity) {
-                    dataSerializer.saveEntity((StackedEntity) stackedObject);
-                } else if (stackedObject instanceof StackedItem) {
-                    dataSerializer.saveItem((StackedItem) stackedObject);
-                } else if(stackedObject instanceof StackedSpawner){
-                    Query.SPAWNER_INSERT.getStatementHolder()
-                            .setLocation(stackedObject.getLocation())
-                            .setInt(stackedObject.getStackAmount())
-                            .setInt(((WStackedSpawner) stackedObject).getUpgradeId())
-                            .execute(true);
-                } else if(stackedObject instanceof StackedBarrel){
-                    Query.BARREL_INSERT.getStatementHolder()
-                            .setLocation(stackedObject.getLocation())
-                            .setInt(stackedObject.getStackAmount())
-                            .setItemStack(((StackedBarrel) stackedObject).getBarrelItem(1))
-                            .execute(true);
-                }
-            });
-            dataHandler.OBJECTS_TO_SAVE.clear();
-        }finally {
-            dataHandler.saveLock.writeLock().unlock();
+        saveQueuedObjects(dataHandler.OBJECTS_TO_SAVE.size(), Long.MAX_VALUE);
+    }
+
+    // Saves up to the given amount of objects, or until the deadline (in nanoseconds) is reached.
+    // At least one object is always saved, so saving makes progress even with a tiny budget.
+    // The data of spawners and barrels is only copied here, while encoding and writing it is done by the database threads.
+    public int saveQueuedObjects(int amount, long deadline){
+        List<UnloadedStackedSpawner> spawnersToSave = new ArrayList<>();
+        List<UnloadedStackedBarrel> barrelsToSave = new ArrayList<>();
+
+        // Only the objects that were queued before the save started are handled, objects that
+        // are changed during the save are queued again and will be saved in the next one.
+        int savedObjects = 0;
+        StackedObject stackedObject;
+
+        while(savedObjects < amount && (savedObjects == 0 || System.nanoTime() < deadline) && (stackedObject = dataHandler.OBJECTS_TO_SAVE.poll()) != null){
+            WStackedObject wStackedObject = (WStackedObject) stackedObject;
+            int dataVersion = wStackedObject.beginSave();
+
+            savedObjects++;
+
+            // The object wasn't changed since it was last saved, or it was unsaved.
+            if(wStackedObject.isSaved(dataVersion))
+                continue;
+
+            if (stackedObject instanceof StackedEntity) {
+                dataSerializer.saveEntity((StackedEntity) stackedObject);
+            } else if (stackedObject instanceof StackedItem) {
+                dataSerializer.saveItem((StackedItem) stackedObject);
+            } else if(stackedObject instanceof StackedSpawner){
+                spawnersToSave.add(new WUnloadedStackedSpawner((StackedSpawner) stackedObject));
+            } else if(stackedObject instanceof StackedBarrel){
+                barrelsToSave.add(new WUnloadedStackedBarrel((StackedBarrel) stackedObject));
+            }
+
+            wStackedObject.setSavedVersion(dataVersion);
         }
+
+        if(!spawnersToSave.isEmpty())
+            dataHandler.writeToStorage(storage -> storage.saveSpawners(spawnersToSave));
+
+        if(!barrelsToSave.isEmpty())
+            dataHandler.writeToStorage(storage -> storage.saveBarrels(barrelsToSave));
+
+        return savedObjects;
     }
 
     public void markToBeSaved(StackedObject stackedObject){
-        try {
-            dataHandler.saveLock.readLock().lock();
-            dataHandler.OBJECTS_TO_SAVE.add(stackedObject);
-        } finally {
-            dataHandler.saveLock.readLock().unlock();
-        }
+        if(((WStackedObject) stackedObject).markDirty())
+            dataHandler.OBJECTS_TO_SAVE.offer(stackedObject);
     }
 
     public void markToBeUnsaved(StackedObject stackedObject){
-        try {
-            dataHandler.saveLock.readLock().lock();
-            dataHandler.OBJECTS_TO_SAVE.remove(stackedObject);
-        } finally {
-            dataHandler.saveLock.readLock().unlock();
-        }
+        // The object may still be in the save queue, but it will be skipped as its data is marked as saved.
+        ((WStackedObject) stackedObject).markClean();
     }
 
     @Override
     public void updateLinkedEntity(LivingEntity livingEntity, LivingEntity newLivingEntity) {
-        for(StackedSpawner stackedSpawner : getStackedSpawners()){
-            LivingEntity linkedEntity = ((WStackedSpawner) stackedSpawner).getRawLinkedEntity();
-            if(linkedEntity != null && linkedEntity.equals(livingEntity))
+        Set<StackedSpawner> linkedSpawners = dataHandler.LINKED_SPAWNERS.get(livingEntity.getUniqueId());
+
+        if(linkedSpawners != null) {
+            // Linking the spawners to the new entity removes them from this set.
+            for (StackedSpawner stackedSpawner : new ArrayList<>(linkedSpawners))
                 stackedSpawner.setLinkedEntity(newLivingEntity);
         }
     }
 
     public void loadSpawners(Chunk chunk){
         ChunkPosition chunkPosition = new ChunkPosition(chunk);
-        Map<Location, UnloadedStackedSpawner> spawnersToLoad = dataHandler.CACHED_SPAWNERS_RAW.remove(chunkPosition);
+        Map<Location, UnloadedStackedSpawner> spawnersToLoad = dataHandler.CACHED_SPAWNERS_RAW.removeChunk(chunkPosition);
+
+        if(spawnersToLoad == null && dataHandler.isLoadOnDemand())
+            spawnersToLoad = dataHandler.loadChunkSpawners(chunkPosition);
 
         if(spawnersToLoad != null){
             for (UnloadedStackedSpawner unloadedStackedSpawner : spawnersToLoad.values()) {
@@ -508,7 +529,10 @@ public final class SystemHandler implements SystemManager {
 
     public void loadBarrels(Chunk chunk){
         ChunkPosition chunkPosition = new ChunkPosition(chunk);
-        Map<Location, UnloadedStackedBarrel> barrelsToLoad = dataHandler.CACHED_BARRELS_RAW.remove(chunkPosition);
+        Map<Location, UnloadedStackedBarrel> barrelsToLoad = dataHandler.CACHED_BARRELS_RAW.removeChunk(chunkPosition);
+
+        if(barrelsToLoad == null && dataHandler.isLoadOnDemand())
+            barrelsToLoad = dataHandler.loadChunkBarrels(chunkPosition);
 
         if(barrelsToLoad != null){
             for (UnloadedStackedBarrel unloadedStackedBarrel : barrelsToLoad.values()) {
@@ -583,18 +607,19 @@ public final class SystemHandler implements SystemManager {
             }
         }
 
+        if(dataHandler.getStorage() != null)
+            dataHandler.getStorage().saveChunk(chunk);
+
         for(StackedSpawner stackedSpawner : getStackedSpawners(chunk)){
             dataHandler.removeStackedSpawner(stackedSpawner);
             if(stackedSpawner.getStackAmount() > 1 || ((WStackedSpawner) stackedSpawner).getUpgradeId() != 0) {
-                dataHandler.CACHED_SPAWNERS_RAW.computeIfAbsent(new ChunkPosition(stackedSpawner.getLocation()), s -> Maps.newConcurrentMap())
-                        .put(stackedSpawner.getLocation(), new WUnloadedStackedSpawner(stackedSpawner));
+                dataHandler.CACHED_SPAWNERS_RAW.put(new WUnloadedStackedSpawner(stackedSpawner));
             }
         }
 
         for(StackedBarrel stackedBarrel : getStackedBarrels(chunk)){
             dataHandler.removeStackedBarrel(stackedBarrel);
-            dataHandler.CACHED_BARRELS_RAW.computeIfAbsent(new ChunkPosition(stackedBarrel.getLocation()), s -> Maps.newConcurrentMap())
-                    .put(stackedBarrel.getLocation(), new WUnloadedStackedBarrel(stackedBarrel));
+            dataHandler.CACHED_BARRELS_RAW.put(new WUnloadedStackedBarrel(stackedBarrel));
             stackedBarrel.removeDisplayBlock();
         }
     }
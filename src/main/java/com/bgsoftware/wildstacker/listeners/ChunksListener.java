@@ -20,6 +20,9 @@ public final class ChunksListener implements Listener {
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onChunkUnload(ChunkUnloadEvent e){
+        // Chunks that are still waiting for their data are not loaded anymore once it's ready.
+        plugin.getDataHandler().dequeueChunkLoad(e.getChunk());
+
         if(loadedData)
             plugin.getSystemManager().handleChunkUnload(e.getChunk());
     }
@@ -27,7 +30,9 @@ public final class ChunksListener implements Listener {
     @EventHandler
     public void onChunkLoad(ChunkLoadEvent e){
         if(loadedData)
-            plugin.getSystemManager().handleChunkLoad(e.getChunk());
+            plugin.getDataHandler().loadChunk(e.getChunk());
+        else
+            plugin.getDataHandler().queueChunkLoad(e.getChunk());
     }
 
 }
@@ -0,0 +1,168 @@
+package com.bgsoftware.wildstacker.listeners;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.utils.ServerVersion;
+import com.bgsoftware.wildstacker.utils.entity.EntitiesGetter;
+import com.bgsoftware.wildstacker.utils.threads.Executor;
+import com.destroystokyo.paper.event.entity.EntityAddToWorldEvent;
+import io.papermc.paper.event.entity.EntityMoveEvent;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.EntityPortalEvent;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.event.entity.EntityTeleportEvent;
+import org.bukkit.event.entity.ItemSpawnEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+@SuppressWarnings("unused")
+public final class EntitiesIndexListener implements Listener {
+
+    public EntitiesIndexListener(WildStackerPlugin plugin){
+        if(ServerVersion.isAtLeast(ServerVersion.v1_8))
+            plugin.getServer().getPluginManager().registerEvents(new SpawnListener(), plugin);
+        else
+            plugin.getServer().getPluginManager().registerEvents(new LegacySpawnListener(), plugin);
+
+        if(doesClassExist("com.destroystokyo.paper.event.entity.EntityAddToWorldEvent"))
+            plugin.getServer().getPluginManager().registerEvents(new PaperAddListener(), plugin);
+
+        if(doesClassExist("io.papermc.paper.event.entity.EntityMoveEvent"))
+            plugin.getServer().getPluginManager().registerEvents(new PaperMoveListener(), plugin);
+
+        for(World world : Bukkit.getWorlds()){
+            for(Chunk chunk : world.getLoadedChunks())
+                EntitiesGetter.handleChunkLoad(chunk);
+        }
+
+        // Entities that moved without any event are only updated by this scan.
+        Bukkit.getScheduler().runTaskTimer(plugin, EntitiesGetter::updateEntities, 1L, 1L);
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onChunkLoad(ChunkLoadEvent e){
+        EntitiesGetter.handleChunkLoad(e.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChunkUnload(ChunkUnloadEvent e){
+        EntitiesGetter.handleChunkUnload(e.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent e){
+        EntitiesGetter.handleEntitySpawn(e.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent e){
+        EntitiesGetter.handleEntityRemove(e.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent e){
+        EntitiesGetter.handleEntityMove(e.getPlayer(), e.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent e){
+        EntitiesGetter.handleEntityMove(e.getPlayer(), e.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangeWorld(PlayerChangedWorldEvent e){
+        EntitiesGetter.handleEntityMove(e.getPlayer(), e.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityTeleport(EntityTeleportEvent e){
+        handleEntityTeleport(e.getEntity(), e.getFrom(), e.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityPortal(EntityPortalEvent e){
+        handleEntityTeleport(e.getEntity(), e.getFrom(), e.getTo());
+    }
+
+    private static void handleEntityTeleport(Entity entity, Location from, Location to){
+        if(to == null || to.getWorld() == null)
+            return;
+
+        EntitiesGetter.handleEntityMove(entity, to);
+
+        // Entities that are moved into other worlds may be replaced by copies of them, which are not spawned by any event.
+        if(from.getWorld() != to.getWorld()) {
+            World world = to.getWorld();
+            int chunkX = to.getBlockX() >> 4, chunkZ = to.getBlockZ() >> 4;
+            Executor.sync(() -> {
+                if(world.isChunkLoaded(chunkX, chunkZ))
+                    EntitiesGetter.handleChunkEntities(world.getChunkAt(chunkX, chunkZ));
+            }, 1L);
+        }
+    }
+
+    private static boolean doesClassExist(String clazz){
+        try{
+            Class.forName(clazz);
+            return true;
+        }catch (Throwable ex){
+            return false;
+        }
+    }
+
+    private static final class SpawnListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onEntitySpawn(EntitySpawnEvent e){
+            EntitiesGetter.handleEntitySpawn(e.getEntity());
+        }
+
+    }
+
+    private static final class LegacySpawnListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onCreatureSpawn(CreatureSpawnEvent e){
+            EntitiesGetter.handleEntitySpawn(e.getEntity());
+        }
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onItemSpawn(ItemSpawnEvent e){
+            EntitiesGetter.handleEntitySpawn(e.getEntity());
+        }
+
+    }
+
+    // Called for every entity that is added to a world, including entities that are not spawned by any other event.
+    private static final class PaperAddListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR)
+        public void onEntityAdd(EntityAddToWorldEvent e){
+            EntitiesGetter.handleEntitySpawn(e.getEntity());
+        }
+
+    }
+
+    // Paper calls move events for all the living entities, so they are always in the right chunks of the index.
+    private static final class PaperMoveListener implements Listener {
+
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onEntityMove(EntityMoveEvent e){
+            EntitiesGetter.handleEntityMove(e.getEntity(), e.getTo());
+        }
+
+    }
+
+}
@@ -67,6 +67,7 @@ import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.EntityDamageEvent;
 import org.bukkit.event.entity.EntityDeathEvent;
 import org.bukkit.event.entity.EntityEnterBlockEvent;
+import org.bukkit.event.entity.EntityTameEvent;
 import org.bukkit.event.entity.EntityTargetLivingEntityEvent;
 import org.bukkit.event.entity.EntityTeleportEvent;
 import org.bukkit.event.entity.EntityTransformEvent;
@@ -782,6 +783,26 @@ public final class EntitiesListener implements Listener {
         }
     }
 
+    /*
+     *  Events that change attributes of entities, which are part of their similarity fingerprints.
+     */
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSheepDyeMonitor(SheepDyeWoolEvent e){
+        invalidateSimilarity(e.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityTameMonitor(EntityTameEvent e){
+        invalidateSimilarity(e.getEntity());
+    }
+
+    // Name tags, saddles, collar dyes, chests and breeding are all done by interacting with the entity.
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityInteractMonitor(PlayerInteractEntityEvent e){
+        invalidateSimilarity(e.getRightClicked());
+    }
+
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
     public void onEntityBreed(CreatureSpawnEvent e){
         if(e.getSpawnReason() == CreatureSpawnEvent.SpawnReason.BREEDING && plugin.getSettings().stackAfterBreed){
@@ -911,11 +932,13 @@ public final class EntitiesListener implements Listener {
     public void handleEntityRemove(Entity entity){
         if(EntityUtils.isStackable(entity)) {
             plugin.getDataHandler().CACHED_ENTITIES.remove(entity.getUniqueId());
+            plugin.getDataHandler().removeLinkedEntity(entity.getUniqueId());
         }
         else if(entity instanceof Item){
             plugin.getDataHandler().CACHED_ITEMS.remove(entity.getUniqueId());
         }
         EntityStorage.clearMetadata(entity);
+        EntitiesGetter.handleEntityRemove(entity);
     }
 
     private void handleEntitySpawn(LivingEntity entity, CreatureSpawnEvent.SpawnReason spawnReason){
@@ -925,8 +948,6 @@ public final class EntitiesListener implements Listener {
         if(!EntityUtils.isStackable(entity) || EntityStorage.hasMetadata(entity, EntityFlag.CORPSE))
             return;
 
-        EntitiesGetter.handleEntitySpawn(entity);
-
         SpawnCause spawnCause = SpawnCause.valueOf(spawnReason);
 
         EntityStorage.setMetadata(entity, EntityFlag.SPAWN_CAUSE, spawnCause);
@@ -1000,6 +1021,15 @@ public final class EntitiesListener implements Listener {
             stackedEntity.runStackAsync(entityConsumer);
     }
 
+    private void invalidateSimilarity(Entity entity){
+        // Entities that are not cached yet don't have a fingerprint to invalidate.
+        StackedEntity stackedEntity = plugin.getDataHandler().CACHED_ENTITIES.get(entity.getUniqueId());
+
+        // The attributes are only changed after the event is called, so the fingerprint is invalidated on the next tick.
+        if(stackedEntity != null)
+            Executor.sync(((WStackedEntity) stackedEntity)::invalidateSimilarityFingerprint, 1L);
+    }
+
     private void handleEntityShear(Cancellable cancellable, Entity entity){
         if(!plugin.getSettings().entitiesStackingEnabled || !EntityUtils.isStackable(entity))
             return;
@@ -1082,6 +1112,12 @@ public final class EntitiesListener implements Listener {
 
     private class TransformListener implements Listener {
 
+        @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+        public void onEntityTransformMonitor(org.bukkit.event.entity.EntityTransformEvent e){
+            invalidateSimilarity(e.getEntity());
+            invalidateSimilarity(e.getTransformedEntity());
+        }
+
         @EventHandler
         public void onEntityTransform(org.bukkit.event.entity.EntityTransformEvent e){
             if(e.getTransformReason() != EntityTransformEvent.TransformReason.DROWNED &&
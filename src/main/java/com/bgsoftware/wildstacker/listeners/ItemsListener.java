@@ -73,8 +73,6 @@ public final class ItemsListener implements Listener {
         if(!stackedItem.isCached())
             return;
 
-        EntitiesGetter.handleEntitySpawn(e.getEntity());
-
         int limit = stackedItem.getStackLimit();
 
         if(stackedItem.getStackAmount() > limit){
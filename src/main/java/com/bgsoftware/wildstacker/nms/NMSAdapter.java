@@ -8,6 +8,7 @@ import com.bgsoftware.wildstacker.utils.legacy.Materials;
 import com.bgsoftware.wildstacker.utils.spawners.SyncedCreatureSpawner;
 import org.bukkit.Achievement;
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
@@ -146,6 +147,18 @@ public interface NMSAdapter {
         return null;
     }
 
+    default boolean isChunkDataSupported(){
+        return false;
+    }
+
+    default byte[] getChunkData(Chunk chunk, String key){
+        return null;
+    }
+
+    default void setChunkData(Chunk chunk, String key, byte[] data){
+
+    }
+
     default boolean handleTotemOfUndying(LivingEntity livingEntity){
         return false;
     }
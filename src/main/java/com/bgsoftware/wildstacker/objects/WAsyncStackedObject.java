@@ -5,12 +5,20 @@ import com.bgsoftware.wildstacker.api.objects.AsyncStackedObject;
 import com.bgsoftware.wildstacker.api.objects.StackedObject;
 import com.bgsoftware.wildstacker.utils.threads.StackService;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Consumer;
 
 @SuppressWarnings("WeakerAccess")
 public abstract class WAsyncStackedObject<T> extends WStackedObject<T> implements AsyncStackedObject<T> {
 
+    // Requests that were not completed after this time are considered lost, and new requests are allowed again.
+    private static final long PENDING_REQUEST_TIMEOUT = 10000;
+
+    private final List<Consumer<Optional<T>>> pendingCallbacks = new ArrayList<>(0);
+    private long pendingRequestTime = -1;
+
     protected WAsyncStackedObject(T object, int stackAmount) {
         super(object, stackAmount);
     }
@@ -37,6 +45,36 @@ public abstract class WAsyncStackedObject<T> extends WStackedObject<T> implement
     }
 
     @Override
-    public abstract void runStackAsync(Consumer<Optional<T>> result);
+    public final void runStackAsync(Consumer<Optional<T>> result){
+        // An object is only queued once, and requests that are made meanwhile are completed together with it.
+        synchronized (pendingCallbacks){
+            if(result != null)
+                pendingCallbacks.add(result);
+
+            long currentTime = System.currentTimeMillis();
+
+            if(pendingRequestTime != -1 && currentTime - pendingRequestTime < PENDING_REQUEST_TIMEOUT)
+                return;
+
+            pendingRequestTime = currentTime;
+        }
+
+        runStackRequest(this::completeStackRequest);
+    }
+
+    // The result consumer must be called once the request is done, whether the object was stacked or not.
+    protected abstract void runStackRequest(Consumer<Optional<T>> result);
+
+    private void completeStackRequest(Optional<T> stackResult){
+        List<Consumer<Optional<T>>> callbacks;
+
+        synchronized (pendingCallbacks){
+            callbacks = new ArrayList<>(pendingCallbacks);
+            pendingCallbacks.clear();
+            pendingRequestTime = -1;
+        }
+
+        callbacks.forEach(callback -> callback.accept(stackResult));
+    }
 
 }
@@ -6,7 +6,6 @@ import com.bgsoftware.wildstacker.api.enums.StackResult;
 import com.bgsoftware.wildstacker.api.enums.UnstackResult;
 import com.bgsoftware.wildstacker.api.objects.StackedBarrel;
 import com.bgsoftware.wildstacker.api.objects.StackedObject;
-import com.bgsoftware.wildstacker.database.Query;
 import com.bgsoftware.wildstacker.utils.GeneralUtils;
 import com.bgsoftware.wildstacker.utils.events.EventsCaller;
 import com.bgsoftware.wildstacker.utils.items.ItemUtils;
@@ -127,9 +126,8 @@ public final class WStackedBarrel extends WStackedHologramObject<Block> implemen
 
         plugin.getSystemManager().removeStackObject(this);
 
-        Query.BARREL_DELETE.getStatementHolder()
-                .setLocation(getLocation())
-                .execute(true);
+        Location location = getLocation();
+        plugin.getDataHandler().writeToStorage(storage -> storage.deleteBarrel(location));
 
         removeHologram();
         removeDisplayBlock();
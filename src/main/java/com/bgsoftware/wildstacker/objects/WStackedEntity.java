@@ -16,6 +16,7 @@ import com.bgsoftware.wildstacker.hooks.MythicMobsHook;
 import com.bgsoftware.wildstacker.hooks.PluginHooks;
 import com.bgsoftware.wildstacker.hooks.WorldGuardHook;
 import com.bgsoftware.wildstacker.loot.LootTable;
+import com.bgsoftware.wildstacker.tasks.StackBudgetTask;
 import com.bgsoftware.wildstacker.utils.GeneralUtils;
 import com.bgsoftware.wildstacker.utils.entity.EntitiesGetter;
 import com.bgsoftware.wildstacker.utils.entity.EntityStorage;
@@ -45,6 +46,7 @@ import org.bukkit.inventory.ItemStack;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -64,6 +66,10 @@ public final class WStackedEntity extends WAsyncStackedObject<LivingEntity> impl
 
     private Predicate<LivingEntity> stackFlag = null;
 
+    // Fingerprints are cached until an event changes one of the attributes that are part of them.
+    private volatile long similarityFingerprint;
+    private volatile boolean similarityFingerprintCached = false;
+
     public WStackedEntity(LivingEntity livingEntity){
         super(livingEntity, 1);
         this.spawnCause = getFlag(EntityFlag.SPAWN_CAUSE);
@@ -85,6 +91,7 @@ public final class WStackedEntity extends WAsyncStackedObject<LivingEntity> impl
         super.setStackAmount(stackAmount, updateName);
         if(saveData)
             plugin.getSystemManager().markToBeSaved(this);
+        EntitiesGetter.markDirty(object);
     }
 
     /*
@@ -211,7 +218,7 @@ public final class WStackedEntity extends WAsyncStackedObject<LivingEntity> impl
             String customName = EntityUtils.getEntityName(this);
             boolean nameVisible = (getStackAmount() > 1 || spawnerUpgradeId != 0) && !plugin.getSettings().entitiesHideNames;
 
-            Executor.sync(() -> {
+            StackBudgetTask.sync(() -> {
                 setCustomName(customName);
                 setCustomNameVisible(nameVisible);
                 if(saveData)
@@ -233,6 +240,17 @@ public final class WStackedEntity extends WAsyncStackedObject<LivingEntity> impl
         if(superResult != StackCheckResult.SUCCESS)
             return superResult;
 
+        // The records of the chunk were not applied yet, so the amounts of the entities are unknown.
+        if(plugin.getDataHandler().isAwaitingData(object.getUniqueId()))
+            return StackCheckResult.CHUNK_NOT_LOADED;
+
+        if(plugin.getDataHandler().isAwaitingData(((StackedEntity) stackedObject).getLivingEntity().getUniqueId()))
+            return StackCheckResult.TARGET_CHUNK_NOT_LOADED;
+
+        // Entities with different fingerprints are never similar, so they are not compared at all.
+        if(getSimilarityFingerprint() != ((WStackedEntity) stackedObject).getSimilarityFingerprint())
+            return StackCheckResult.NOT_SIMILAR;
+
         StackCheckResult similarResult = EntityUtils.areSimilar(object, ((StackedEntity) stackedObject).getLivingEntity());
 
         if(similarResult != StackCheckResult.SUCCESS)
@@ -301,10 +319,10 @@ public final class WStackedEntity extends WAsyncStackedObject<LivingEntity> impl
     }
 
     @Override
-    public void runStackAsync(Consumer<Optional<LivingEntity>> result) {
+    protected void runStackRequest(Consumer<Optional<LivingEntity>> result) {
         // Should be called sync due to collecting nearby entities
         if(!Bukkit.isPrimaryThread()){
-            Executor.sync(() -> runStackAsync(result));
+            StackBudgetTask.sync(() -> runStackRequest(result));
             return;
         }
 
@@ -317,19 +335,27 @@ public final class WStackedEntity extends WAsyncStackedObject<LivingEntity> impl
             return;
         }
 
-        Collection<Entity> nearbyEntities = EntitiesGetter.getNearbyEntities(object.getLocation(), range,
-                entity -> EntityUtils.isStackable(entity) && runStackCheck(WStackedEntity.of(entity)) == StackCheckResult.SUCCESS);
+        int minimumStackSize = GeneralUtils.get(plugin.getSettings().minimumRequiredEntities, this, 1);
+        Predicate<Entity> entitiesFilter = entity -> EntityUtils.isStackable(entity) &&
+                runStackCheck(WStackedEntity.of(entity)) == StackCheckResult.SUCCESS;
+
+        // Entities can only be stacked into entities of the same type, so other types are not checked at all.
+        // All the nearby entities are only needed when they are stacked together, otherwise only the closest one is.
+        Collection<Entity> nearbyEntities = minimumStackSize > 2 ?
+                EntitiesGetter.getNearbyEntities(entityLocation, range, getType(), entitiesFilter) : Collections.emptyList();
+        Entity closestEntity = minimumStackSize > 2 ? GeneralUtils.getClosestBukkit(entityLocation, nearbyEntities) :
+                EntitiesGetter.getClosestEntity(entityLocation, range, getType(), entitiesFilter);
 
         StackService.execute(this, () -> {
-            Set<StackedEntity> filteredEntities = nearbyEntities.stream().filter(Entity::isValid)
-                    .map(WStackedEntity::of).collect(Collectors.toSet());
-            Optional<StackedEntity> entityOptional = GeneralUtils.getClosest(entityLocation, filteredEntities);
+            Optional<StackedEntity> entityOptional = closestEntity == null || !closestEntity.isValid() ? Optional.empty() :
+                    Optional.of(WStackedEntity.of(closestEntity));
 
             if (entityOptional.isPresent()) {
-                int minimumStackSize = GeneralUtils.get(plugin.getSettings().minimumRequiredEntities, this, 1);
                 StackedEntity targetEntity = entityOptional.get();
 
                 if (minimumStackSize > 2) {
+                    Set<StackedEntity> filteredEntities = nearbyEntities.stream().filter(Entity::isValid)
+                            .map(WStackedEntity::of).collect(Collectors.toSet());
                     int totalStackSize = getStackAmount();
 
                     for (StackedEntity stackedEntity : filteredEntities)
@@ -705,6 +731,19 @@ public final class WStackedEntity extends WAsyncStackedObject<LivingEntity> impl
             plugin.getDataHandler().CACHED_DEAD_ENTITIES.add(object.getUniqueId());
     }
 
+    public long getSimilarityFingerprint(){
+        if(!similarityFingerprintCached){
+            similarityFingerprint = EntityUtils.getSimilarityFingerprint(object);
+            similarityFingerprintCached = true;
+        }
+
+        return similarityFingerprint;
+    }
+
+    public void invalidateSimilarityFingerprint(){
+        similarityFingerprintCached = false;
+    }
+
     public boolean shouldBeStacked(){
         if(stackFlag == null)
             return true;
@@ -6,7 +6,7 @@ import com.bgsoftware.wildstacker.api.enums.UnstackResult;
 import com.bgsoftware.wildstacker.api.objects.StackedItem;
 import com.bgsoftware.wildstacker.api.objects.StackedObject;
 import com.bgsoftware.wildstacker.hooks.CoreProtectHook;
-import com.bgsoftware.wildstacker.utils.GeneralUtils;
+import com.bgsoftware.wildstacker.tasks.StackBudgetTask;
 import com.bgsoftware.wildstacker.utils.ServerVersion;
 import com.bgsoftware.wildstacker.utils.entity.EntitiesGetter;
 import com.bgsoftware.wildstacker.utils.events.EventsCaller;
@@ -26,7 +26,6 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 
-import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -65,6 +64,7 @@ public final class WStackedItem extends WAsyncStackedObject<Item> implements Sta
                 object.setItemStack(itemStack);
             if(saveData)
                 plugin.getSystemManager().markToBeSaved(this);
+            EntitiesGetter.markDirty(object);
         }
     }
 
@@ -199,7 +199,7 @@ public final class WStackedItem extends WAsyncStackedObject<Item> implements Sta
 
         String CUSTOM_NAME = customName;
 
-        Executor.sync(() -> {
+        StackBudgetTask.sync(() -> {
             if(updateName) {
                 setCustomName(CUSTOM_NAME);
                 if(saveData)
@@ -219,6 +219,13 @@ public final class WStackedItem extends WAsyncStackedObject<Item> implements Sta
         if (superResult != StackCheckResult.SUCCESS)
             return superResult;
 
+        // The records of the chunk were not applied yet, so the amounts of the items are unknown.
+        if (plugin.getDataHandler().isAwaitingData(object.getUniqueId()))
+            return StackCheckResult.CHUNK_NOT_LOADED;
+
+        if (plugin.getDataHandler().isAwaitingData(((StackedItem) stackedObject).getItem().getUniqueId()))
+            return StackCheckResult.TARGET_CHUNK_NOT_LOADED;
+
         if (!plugin.getSettings().itemsMaxPickupDelay && !ItemUtils.canPickup(object))
             return StackCheckResult.PICKUP_DELAY_EXCEEDED;
 
@@ -243,10 +250,10 @@ public final class WStackedItem extends WAsyncStackedObject<Item> implements Sta
     }
 
     @Override
-    public void runStackAsync(Consumer<Optional<Item>> result) {
+    protected void runStackRequest(Consumer<Optional<Item>> result) {
         // Should be called sync due to collecting nearby entities
         if(!Bukkit.isPrimaryThread()){
-            Executor.sync(() -> runStackAsync(result));
+            StackBudgetTask.sync(() -> runStackRequest(result));
             return;
         }
 
@@ -258,17 +265,13 @@ public final class WStackedItem extends WAsyncStackedObject<Item> implements Sta
             return;
         }
 
-        Collection<Entity> nearbyEntities = EntitiesGetter.getNearbyEntities(object.getLocation(), range, item -> true);
+        // Items can only be stacked into similar items, so items of other materials are not checked at all.
+        Entity closestItem = EntitiesGetter.getClosestItem(object.getLocation(), range, object.getItemStack().getType(),
+                entity -> ItemUtils.isStackable(entity) && runStackCheck(WStackedItem.ofBypass((Item) entity)) == StackCheckResult.SUCCESS);
 
         StackService.execute(this, () -> {
-            Location itemLocation = getItem().getLocation();
-
-            Optional<StackedItem> itemOptional = GeneralUtils.getClosest(itemLocation,
-                    nearbyEntities.stream()
-                            .filter(ItemUtils::isStackable)
-                            .map(entity -> WStackedItem.ofBypass((Item) entity))
-                            .filter(stackedItem -> runStackCheck(stackedItem) == StackCheckResult.SUCCESS)
-            );
+            Optional<StackedItem> itemOptional = closestItem == null || !closestItem.isValid() ? Optional.empty() :
+                    Optional.of(WStackedItem.ofBypass((Item) closestItem));
 
             if (itemOptional.isPresent()) {
                 StackedItem targetItem = itemOptional.get();
@@ -11,6 +11,8 @@ import org.bukkit.Location;
 import org.bukkit.entity.Entity;
 
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 
@@ -25,6 +27,12 @@ public abstract class WStackedObject<T> implements StackedObject<T> {
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
     private String cachedDisplayName = "";
 
+    // Every change to the saved data of the object bumps its version.
+    // The object is only added to the save queue if it's not already there.
+    private final AtomicInteger dataVersion = new AtomicInteger(0);
+    private final AtomicBoolean queuedForSave = new AtomicBoolean(false);
+    private volatile int savedVersion = 0;
+
     protected WStackedObject(T object, int stackAmount) {
         this.object = object;
         this.stackAmount = stackAmount;
@@ -57,6 +65,29 @@ public abstract class WStackedObject<T> implements StackedObject<T> {
         this.saveData = saveData && isCached();
     }
 
+    public boolean markDirty(){
+        dataVersion.incrementAndGet();
+        return queuedForSave.compareAndSet(false, true);
+    }
+
+    public int beginSave(){
+        // The flag is cleared before the data is read, so changes that are made from now on will queue the object again.
+        queuedForSave.set(false);
+        return dataVersion.get();
+    }
+
+    public boolean isSaved(int version){
+        return savedVersion == version;
+    }
+
+    public void setSavedVersion(int savedVersion){
+        this.savedVersion = savedVersion;
+    }
+
+    public void markClean(){
+        this.savedVersion = dataVersion.get();
+    }
+
     public String getCachedDisplayName(){
         return cachedDisplayName;
     }
@@ -7,7 +7,6 @@ import com.bgsoftware.wildstacker.api.objects.StackedEntity;
 import com.bgsoftware.wildstacker.api.objects.StackedObject;
 import com.bgsoftware.wildstacker.api.objects.StackedSpawner;
 import com.bgsoftware.wildstacker.api.upgrades.SpawnerUpgrade;
-import com.bgsoftware.wildstacker.database.Query;
 import com.bgsoftware.wildstacker.menu.SpawnersManageMenu;
 import com.bgsoftware.wildstacker.utils.GeneralUtils;
 import com.bgsoftware.wildstacker.utils.entity.EntityUtils;
@@ -133,9 +132,8 @@ public final class WStackedSpawner extends WStackedHologramObject<CreatureSpawne
 
         plugin.getSystemManager().removeStackObject(this);
 
-        Query.SPAWNER_DELETE.getStatementHolder()
-                .setLocation(getLocation())
-                .execute(true);
+        Location location = getLocation();
+        plugin.getDataHandler().writeToStorage(storage -> storage.deleteSpawner(location));
 
         removeHologram();
 
@@ -203,18 +201,7 @@ public final class WStackedSpawner extends WStackedHologramObject<CreatureSpawne
             if(range <= 0)
                 return Optional.empty();
 
-            Location location = getLocation();
-
-            int maxX = location.getBlockX() + range, maxY = location.getBlockY() + range, maxZ = location.getBlockZ() + range;
-            int minX = location.getBlockX() - range, minY = location.getBlockY() - range, minZ = location.getBlockZ() - range;
-
-            spawnerStream = plugin.getSystemManager().getStackedSpawners().stream()
-                    .filter(stackedSpawner -> {
-                        Location loc = stackedSpawner.getLocation();
-                        return loc.getBlockX() >= minX && loc.getBlockX() <= maxX &&
-                                loc.getBlockY() >= minY && loc.getBlockY() <= maxY &&
-                                loc.getBlockZ() >= minZ && loc.getBlockZ() <= maxZ;
-                    });
+            spawnerStream = plugin.getDataHandler().getNearbySpawners(blockLocation, range).stream();
         }
 
         Optional<StackedSpawner> spawnerOptional = GeneralUtils.getClosest(blockLocation, spawnerStream
@@ -349,13 +336,16 @@ public final class WStackedSpawner extends WStackedHologramObject<CreatureSpawne
     public LivingEntity getLinkedEntity(){
         if (linkedEntity != null && (!plugin.getSettings().linkedEntitiesEnabled || linkedEntity.isDead() || !linkedEntity.isValid() ||
                 linkedEntity.getLocation().distanceSquared(getLocation()) > Math.pow(plugin.getSettings().linkedEntitiesMaxDistance, 2.0)))
-            linkedEntity = null;
+            setLinkedEntity(null);
         return linkedEntity;
     }
 
     @Override
     public void setLinkedEntity(LivingEntity linkedEntity){
+        LivingEntity oldLinkedEntity = this.linkedEntity;
         this.linkedEntity = linkedEntity;
+        if(oldLinkedEntity != linkedEntity)
+            plugin.getDataHandler().updateLinkedSpawner(this, oldLinkedEntity, linkedEntity);
     }
 
     @Override
@@ -369,19 +359,7 @@ public final class WStackedSpawner extends WStackedHologramObject<CreatureSpawne
         }
 
         else{
-            int range = getMergeRadius();
-            Location location = getLocation();
-
-            int maxX = location.getBlockX() + range, maxY = location.getBlockY() + range, maxZ = location.getBlockZ() + range;
-            int minX = location.getBlockX() - range, minY = location.getBlockY() - range, minZ = location.getBlockZ() - range;
-
-            spawnerStream = plugin.getSystemManager().getStackedSpawners().stream()
-                    .filter(stackedSpawner -> {
-                        Location loc = stackedSpawner.getLocation();
-                        return loc.getBlockX() >= minX && loc.getBlockX() <= maxX &&
-                                loc.getBlockY() >= minY && loc.getBlockY() <= maxY &&
-                                loc.getBlockZ() >= minZ && loc.getBlockZ() <= maxZ;
-                    });
+            spawnerStream = plugin.getDataHandler().getNearbySpawners(getLocation(), getMergeRadius()).stream();
         }
 
         return spawnerStream.filter(this::canStackIntoNoLimit).collect(Collectors.toList());
@@ -2,13 +2,9 @@ package com.bgsoftware.wildstacker.objects;
 
 import com.bgsoftware.wildstacker.api.objects.StackedBarrel;
 import com.bgsoftware.wildstacker.api.objects.UnloadedStackedBarrel;
-import com.bgsoftware.wildstacker.database.Query;
-import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
 import org.bukkit.Location;
 import org.bukkit.inventory.ItemStack;
 
-import java.util.Map;
-
 public final class WUnloadedStackedBarrel extends WUnloadedStackedObject implements UnloadedStackedBarrel {
 
     private final ItemStack barrelItem;
@@ -29,16 +25,19 @@ public final class WUnloadedStackedBarrel extends WUnloadedStackedObject impleme
         return barrelItem;
     }
 
+    @Override
+    public void setStackAmount(int stackAmount, boolean updateName) {
+        super.setStackAmount(stackAmount, updateName);
+        // Unloaded barrels are cached as packed data, so changes must be written back into the cache.
+        plugin.getDataHandler().CACHED_BARRELS_RAW.replace(this);
+    }
+
     @Override
     public void remove() {
         Location location = getLocation();
-        Map<Location, UnloadedStackedBarrel> cachedBarrels = plugin.getDataHandler().CACHED_BARRELS_RAW.get(new ChunkPosition(location));
-        if(cachedBarrels != null)
-            cachedBarrels.remove(location);
+        plugin.getDataHandler().CACHED_BARRELS_RAW.remove(location);
 
-        Query.BARREL_DELETE.getStatementHolder()
-                .setLocation(getLocation())
-                .execute(true);
+        plugin.getDataHandler().writeToStorage(storage -> storage.deleteBarrel(location));
     }
 
 }
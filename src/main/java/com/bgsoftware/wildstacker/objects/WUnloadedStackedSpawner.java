@@ -3,12 +3,8 @@ package com.bgsoftware.wildstacker.objects;
 import com.bgsoftware.wildstacker.api.objects.StackedSpawner;
 import com.bgsoftware.wildstacker.api.objects.UnloadedStackedSpawner;
 import com.bgsoftware.wildstacker.api.upgrades.SpawnerUpgrade;
-import com.bgsoftware.wildstacker.database.Query;
-import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
 import org.bukkit.Location;
 
-import java.util.Map;
-
 public final class WUnloadedStackedSpawner extends WUnloadedStackedObject implements UnloadedStackedSpawner {
 
     private int spawnerUpgradeId;
@@ -35,18 +31,22 @@ public final class WUnloadedStackedSpawner extends WUnloadedStackedObject implem
     @Override
     public void setUpgrade(SpawnerUpgrade spawnerUpgrade) {
         this.spawnerUpgradeId = spawnerUpgrade == null ? 0 : spawnerUpgrade.getId();
+        plugin.getDataHandler().CACHED_SPAWNERS_RAW.replace(this);
+    }
+
+    @Override
+    public void setStackAmount(int stackAmount, boolean updateName) {
+        super.setStackAmount(stackAmount, updateName);
+        // Unloaded spawners are cached as packed data, so changes must be written back into the cache.
+        plugin.getDataHandler().CACHED_SPAWNERS_RAW.replace(this);
     }
 
     @Override
     public void remove() {
         Location location = getLocation();
-        Map<Location, UnloadedStackedSpawner> cachedSpawners = plugin.getDataHandler().CACHED_SPAWNERS_RAW.get(new ChunkPosition(location));
-        if(cachedSpawners != null)
-            cachedSpawners.remove(location);
+        plugin.getDataHandler().CACHED_SPAWNERS_RAW.remove(location);
 
-        Query.SPAWNER_DELETE.getStatementHolder()
-                .setLocation(getLocation())
-                .execute(true);
+        plugin.getDataHandler().writeToStorage(storage -> storage.deleteSpawner(location));
     }
 
 }
@@ -0,0 +1,46 @@
+package com.bgsoftware.wildstacker.tasks;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+public final class AutoSaveTask extends BukkitRunnable {
+
+    private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
+
+    private static BukkitTask task = null;
+
+    private int ticksUntilSave;
+    private int objectsToSave = 0;
+
+    private AutoSaveTask(){
+        ticksUntilSave = plugin.getSettings().databaseAutosaveInterval;
+        task = runTaskTimer(plugin, 1L, 1L);
+    }
+
+    public static void start(){
+        if(task != null)
+            task.cancel();
+
+        new AutoSaveTask();
+    }
+
+    @Override
+    public void run() {
+        // A new save starts with the objects that are queued at this moment.
+        if(--ticksUntilSave <= 0){
+            ticksUntilSave = plugin.getSettings().databaseAutosaveInterval;
+            objectsToSave = plugin.getDataHandler().OBJECTS_TO_SAVE.size();
+        }
+
+        if(objectsToSave <= 0)
+            return;
+
+        long deadline = System.nanoTime() + (long) (plugin.getSettings().databaseAutosaveBudget * 1_000_000);
+        int savedObjects = plugin.getSystemManager().saveQueuedObjects(objectsToSave, deadline);
+
+        // Nothing was saved only if the queue is empty, which means the objects were saved by another save.
+        objectsToSave = savedObjects == 0 ? 0 : objectsToSave - savedObjects;
+    }
+
+}
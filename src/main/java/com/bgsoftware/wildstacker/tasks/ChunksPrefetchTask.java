@@ -0,0 +1,49 @@
+package com.bgsoftware.wildstacker.tasks;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+public final class ChunksPrefetchTask extends BukkitRunnable {
+
+    private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
+
+    private static BukkitTask task = null;
+
+    private ChunksPrefetchTask(){
+        if(plugin.getDataHandler().isLoadOnDemand() && !plugin.getDataHandler().getStorage().isLoadedByChunks() &&
+                plugin.getSettings().databasePrefetchRadius > 0)
+            task = runTaskTimer(plugin, 20L, 20L);
+    }
+
+    public static void start(){
+        if(task != null)
+            task.cancel();
+
+        new ChunksPrefetchTask();
+    }
+
+    @Override
+    public void run() {
+        int radius = Bukkit.getViewDistance() + plugin.getSettings().databasePrefetchRadius;
+
+        for(Player player : Bukkit.getOnlinePlayers()){
+            Location location = player.getLocation();
+            World world = location.getWorld();
+            int playerChunkX = location.getBlockX() >> 4, playerChunkZ = location.getBlockZ() >> 4;
+
+            for(int chunkX = playerChunkX - radius; chunkX <= playerChunkX + radius; chunkX++){
+                for(int chunkZ = playerChunkZ - radius; chunkZ <= playerChunkZ + radius; chunkZ++){
+                    // Loaded chunks already have their data loaded.
+                    if(!world.isChunkLoaded(chunkX, chunkZ))
+                        plugin.getDataHandler().prefetchChunk(world, chunkX, chunkZ);
+                }
+            }
+        }
+    }
+
+}
@@ -3,22 +3,33 @@ package com.bgsoftware.wildstacker.tasks;
 import com.bgsoftware.wildstacker.WildStackerPlugin;
 import com.bgsoftware.wildstacker.api.objects.StackedItem;
 import com.bgsoftware.wildstacker.objects.WStackedItem;
+import com.bgsoftware.wildstacker.utils.entity.EntitiesGetter;
 import com.bgsoftware.wildstacker.utils.items.ItemUtils;
+import com.bgsoftware.wildstacker.utils.threads.StackService;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Item;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public final class ItemsMerger extends BukkitRunnable {
 
+    // Only items that were changed since the last run are stacked.
+    // All the items are checked once in a while, in case there were changes that weren't tracked.
+    private static final long FULL_SCAN_INTERVAL = 600;
+
     private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
 
     private static BukkitTask task = null;
 
+    private long ticksSinceFullScan = 0;
+
     private ItemsMerger(){
         if(plugin.getSettings().itemsStackingEnabled && plugin.getSettings().itemsStackInterval > 0)
             task = runTaskTimerAsynchronously(plugin, plugin.getSettings().itemsStackInterval, plugin.getSettings().itemsStackInterval);
@@ -34,26 +45,55 @@ public final class ItemsMerger extends BukkitRunnable {
     @Override
     public void run() {
         if(Bukkit.getOnlinePlayers().size() > 0) {
+            ticksSinceFullScan += plugin.getSettings().itemsStackInterval;
+
+            // Dirty items are left untouched by full scans, so they are not lost if the scan is stopped.
+            if(ticksSinceFullScan < FULL_SCAN_INTERVAL){
+                stackItems(EntitiesGetter.pollDirtyItems(), true);
+                return;
+            }
+
+            ticksSinceFullScan = 0;
+
             for(World world : Bukkit.getWorlds()){
+                // The stacking threads are behind, so no more work is added until they catch up.
+                if(StackService.isOverloaded())
+                    return;
+
                 try {
-                    Set<Item> items = ConcurrentHashMap.newKeySet();
+                    Set<Entity> items = ConcurrentHashMap.newKeySet();
                     items.addAll(world.getEntitiesByClass(Item.class));
+                    stackItems(items, false);
+                }catch(Throwable ignored){}
+            }
+        }
+    }
 
-                    for (Item item : items) {
-                        try {
-                            if (!ItemUtils.isStackable(item))
-                                continue;
+    // If the stacking threads are behind, dirty items that were not stacked are marked as dirty again.
+    private void stackItems(Collection<Entity> items, boolean dirty){
+        Iterator<Entity> iterator = items.iterator();
 
-                            StackedItem stackedItem = WStackedItem.of(item);
+        while(iterator.hasNext()){
+            if(StackService.isOverloaded()){
+                if(dirty)
+                    iterator.forEachRemaining(EntitiesGetter::markDirty);
+                return;
+            }
 
-                            if (!stackedItem.isCached())
-                                continue;
+            Entity entity = iterator.next();
 
-                            stackedItem.runStackAsync(null);
-                        } catch (Throwable ignored) { }
-                    }
-                }catch(Throwable ignored){}
-            }
+            try {
+                if (!(entity instanceof Item) || !ItemUtils.isStackable(entity))
+                    continue;
+
+                StackedItem stackedItem = WStackedItem.of(entity);
+
+                if (!stackedItem.isCached())
+                    continue;
+
+                stackedItem.runStackAsync(null);
+            } catch (Throwable ignored) { }
         }
     }
+
 }
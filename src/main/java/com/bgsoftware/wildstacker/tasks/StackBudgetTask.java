@@ -0,0 +1,172 @@
+package com.bgsoftware.wildstacker.tasks;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Runs the main-thread work of stacking within a time budget for each tick.
+// The budget is lowered as the time the server is busy in each tick gets closer to the length of a tick, and raised
+// while a lot of work is waiting, so stacking catches up quickly on an idle server and never makes a busy server lag.
+public final class StackBudgetTask extends BukkitRunnable {
+
+    private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
+
+    // Servers that are busy for less than the healthy time in each tick get the full budget, and the budget is never
+    // bigger than the time that is left until the tick time.
+    private static final double HEALTHY_TICK_TIME = 35, TICK_TIME = 50;
+    private static final double MIN_BUDGET_SCALE = 0.1, MAX_BUDGET_SCALE = 2;
+    // The amount of queued tasks that raises the budget to its max.
+    private static final int HIGH_PRESSURE_TASKS = 1000;
+
+    private static final Queue<Runnable> queuedTasks = new ConcurrentLinkedQueue<>();
+
+    private static BukkitTask task = null;
+
+    // Paper keeps the average time the server is busy in each tick.
+    private static final Method AVERAGE_TICK_TIME_METHOD = getAverageTickTimeMethod();
+    // Otherwise, the busy times of the last ticks are read from the server itself.
+    private static final long[] SERVER_TICK_TIMES = AVERAGE_TICK_TIME_METHOD != null ? null : getServerTickTimes();
+
+    private static volatile double averageTickTime = 0, averageUsedTime = 0, currentBudget = 0;
+
+    private long lastTickTime = -1;
+
+    private StackBudgetTask(){
+        task = runTaskTimer(plugin, 1L, 1L);
+    }
+
+    public static void start(){
+        if(task != null)
+            task.cancel();
+
+        new StackBudgetTask();
+    }
+
+    // Tasks of the main thread are executed right away, like Executor#sync.
+    public static void sync(Runnable runnable){
+        if(Bukkit.isPrimaryThread())
+            runnable.run();
+        else
+            queuedTasks.add(runnable);
+    }
+
+    public static boolean isServerHealthy(){
+        return averageTickTime <= HEALTHY_TICK_TIME;
+    }
+
+    public static double getAverageTickTime(){
+        return averageTickTime;
+    }
+
+    public static double getAverageUsedTime(){
+        return averageUsedTime;
+    }
+
+    public static double getCurrentBudget(){
+        return currentBudget;
+    }
+
+    public static int getQueuedTasks(){
+        return queuedTasks.size();
+    }
+
+    @Override
+    public void run() {
+        long startTime = System.nanoTime();
+
+        double serverTickTime = getServerTickTime();
+
+        if(serverTickTime >= 0) {
+            averageTickTime = serverTickTime;
+        }
+        else {
+            // The time between ticks is only used when the busy time is not available. It can't tell an idle server
+            // from a busy one, so ticks that are on time are counted as healthy, and late ticks as busy by their delay.
+            if(lastTickTime != -1) {
+                double lateTime = Math.max(0, (startTime - lastTickTime) / 1_000_000D - TICK_TIME);
+                averageTickTime = averageTickTime * 0.95 + (HEALTHY_TICK_TIME + lateTime) * 0.05;
+            }
+
+            lastTickTime = startTime;
+        }
+
+        double healthScale = Math.max(MIN_BUDGET_SCALE, Math.min(1,
+                (TICK_TIME - averageTickTime) / (TICK_TIME - HEALTHY_TICK_TIME)));
+        double pressureScale = 1 + (MAX_BUDGET_SCALE - 1) * Math.min(1, (double) queuedTasks.size() / HIGH_PRESSURE_TASKS);
+
+        currentBudget = Math.min(plugin.getSettings().stackingBudget * healthScale * pressureScale,
+                Math.max(0, TICK_TIME - averageTickTime));
+
+        long deadline = startTime + (long) (currentBudget * 1_000_000);
+        Runnable runnable;
+
+        // At least one task is executed every tick, so stacking is never stuck.
+        do {
+            if((runnable = queuedTasks.poll()) == null)
+                break;
+
+            try {
+                runnable.run();
+            }catch(Exception ex){
+                ex.printStackTrace();
+            }
+        } while(System.nanoTime() < deadline);
+
+        averageUsedTime = averageUsedTime * 0.95 + ((System.nanoTime() - startTime) / 1_000_000D) * 0.05;
+    }
+
+    // Returns the average time in milliseconds the server was busy in the last ticks, or -1 if it's not available.
+    private static double getServerTickTime(){
+        if(AVERAGE_TICK_TIME_METHOD != null){
+            try {
+                return (double) AVERAGE_TICK_TIME_METHOD.invoke(null);
+            }catch(Exception ignored){}
+        }
+
+        if(SERVER_TICK_TIMES != null){
+            long totalTickTime = 0;
+            for(long tickTime : SERVER_TICK_TIMES)
+                totalTickTime += tickTime;
+            return totalTickTime / 1_000_000D / SERVER_TICK_TIMES.length;
+        }
+
+        return -1;
+    }
+
+    private static Method getAverageTickTimeMethod(){
+        try{
+            //noinspection JavaReflectionMemberAccess
+            return Bukkit.class.getMethod("getAverageTickTime");
+        }catch (Throwable ex){
+            return null;
+        }
+    }
+
+    private static long[] getServerTickTimes(){
+        try{
+            Object minecraftServer = Bukkit.getServer().getClass().getMethod("getServer").invoke(Bukkit.getServer());
+
+            // The server keeps the busy times of its last 100 ticks, under a different name in each version.
+            for(Class<?> serverClass = minecraftServer.getClass(); serverClass != null; serverClass = serverClass.getSuperclass()) {
+                for (Field field : serverClass.getDeclaredFields()) {
+                    if (field.getType() == long[].class && !Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        long[] tickTimes = (long[]) field.get(minecraftServer);
+                        if (tickTimes != null && tickTimes.length == 100)
+                            return tickTimes;
+                    }
+                }
+            }
+        }catch (Throwable ignored){}
+
+        return null;
+    }
+
+}
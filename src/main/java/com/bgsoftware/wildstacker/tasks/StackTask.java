@@ -3,22 +3,40 @@ package com.bgsoftware.wildstacker.tasks;
 import com.bgsoftware.wildstacker.WildStackerPlugin;
 import com.bgsoftware.wildstacker.api.objects.StackedEntity;
 import com.bgsoftware.wildstacker.objects.WStackedEntity;
+import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
+import com.bgsoftware.wildstacker.utils.entity.EntitiesClusters;
+import com.bgsoftware.wildstacker.utils.entity.EntitiesGetter;
+import com.bgsoftware.wildstacker.utils.threads.StackService;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.World;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public final class StackTask extends BukkitRunnable {
 
+    // Only entities that were changed since the last run are stacked.
+    // All the entities are checked once in a while, in case there were changes that weren't tracked.
+    private static final long FULL_SCAN_INTERVAL = 600;
+
     private static WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
 
     private static BukkitTask task;
 
+    private long ticksSinceFullScan = 0;
+
     private StackTask(){
         if(plugin.getSettings().entitiesStackingEnabled && plugin.getSettings().entitiesStackInterval > 0)
             task = runTaskTimerAsynchronously(plugin, plugin.getSettings().entitiesStackInterval, plugin.getSettings().entitiesStackInterval);
@@ -34,26 +52,65 @@ public final class StackTask extends BukkitRunnable {
     @Override
     public void run() {
         if(Bukkit.getOnlinePlayers().size() > 0) {
+            ticksSinceFullScan += plugin.getSettings().entitiesStackInterval;
+
+            // Dirty entities are left untouched by full scans, so they are not lost if the scan is stopped.
+            if(ticksSinceFullScan < FULL_SCAN_INTERVAL){
+                stackEntities(EntitiesGetter.pollDirtyEntities(), true);
+                return;
+            }
+
+            ticksSinceFullScan = 0;
+
             for(World world : Bukkit.getWorlds()){
+                // The stacking threads are behind, so no more work is added until they catch up.
+                if(StackService.isOverloaded())
+                    return;
+
                 try {
-                    Set<LivingEntity> livingEntities = ConcurrentHashMap.newKeySet();
+                    Set<Entity> livingEntities = ConcurrentHashMap.newKeySet();
                     livingEntities.addAll(world.getLivingEntities());
+                    stackEntities(livingEntities, false);
+                }catch(Throwable ignored){}
+            }
+        }
+    }
 
-                    for (LivingEntity livingEntity : livingEntities) {
-                        try {
-                            if (!livingEntity.isValid() || livingEntity.getType().name().equals("ARMOR_STAND") || livingEntity instanceof Player)
-                                continue;
+    // The entities are stacked by the regions they are in, so all the entities of each region are stacked together.
+    // If the stacking threads are behind, dirty entities of regions that were not stacked are marked as dirty again.
+    private void stackEntities(Collection<Entity> entities, boolean dirty){
+        Map<ChunkPosition, List<Entity>> regions = new HashMap<>();
 
-                            StackedEntity stackedEntity = WStackedEntity.of(livingEntity);
+        for (Entity entity : entities) {
+            try {
+                if (!(entity instanceof LivingEntity) || !entity.isValid() || entity.getType().name().equals("ARMOR_STAND") || entity instanceof Player)
+                    continue;
 
-                            if (!stackedEntity.isCached())
-                                continue;
+                StackedEntity stackedEntity = WStackedEntity.of(entity);
 
-                            stackedEntity.runStackAsync(null);
-                        } catch (Throwable ignored) { }
-                    }
-                }catch(Throwable ignored){}
+                if (!stackedEntity.isCached())
+                    continue;
+
+                Location location = entity.getLocation();
+                regions.computeIfAbsent(new ChunkPosition(location.getWorld().getName(), location.getBlockX() >> StackService.REGION_SHIFT,
+                        location.getBlockZ() >> StackService.REGION_SHIFT), region -> new ArrayList<>()).add(entity);
+            } catch (Throwable ignored) { }
+        }
+
+        Iterator<Map.Entry<ChunkPosition, List<Entity>>> iterator = regions.entrySet().iterator();
+
+        while(iterator.hasNext()){
+            if(StackService.isOverloaded()){
+                if(dirty)
+                    iterator.forEachRemaining(entry -> entry.getValue().forEach(EntitiesGetter::markDirty));
+                return;
             }
+
+            ChunkPosition region = iterator.next().getKey();
+            World world = Bukkit.getWorld(region.getWorld());
+            if(world != null)
+                EntitiesClusters.stackRegion(world, region.getX(), region.getZ());
         }
     }
+
 }
@@ -18,9 +18,8 @@ import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -65,36 +64,70 @@ public final class GeneralUtils {
         return chunk.getX() == location.getBlockX() >> 4 && chunk.getZ() == location.getBlockZ() >> 4;
     }
 
+    public static long getBlockKey(Location location){
+        return getBlockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+    }
+
+    public static long getBlockKey(int x, int y, int z){
+        // 26 bits for x and z, 12 bits for y
+        return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (long) y & 0xFFF;
+    }
+
+    public static int getBlockKeyX(long blockKey){
+        return (int) (blockKey >> 38);
+    }
+
+    public static int getBlockKeyY(long blockKey){
+        return (int) (blockKey << 52 >> 52);
+    }
+
+    public static int getBlockKeyZ(long blockKey){
+        return (int) (blockKey << 26 >> 38);
+    }
+
     public static boolean isChunkLoaded(Location location){
         return location.getWorld().isChunkLoaded(location.getBlockX() >> 4, location.getBlockZ() >> 4);
     }
 
     public static <T extends StackedObject> Optional<T> getClosest(Location origin, Collection<T> objects){
-        return getClosest(origin, objects.stream());
+        return getClosest(origin, objects.iterator());
     }
 
     public static <T extends StackedObject> Optional<T> getClosest(Location origin, Stream<T> objects){
-        Map<T, Double> distances = new HashMap<>();
-        return objects.min((o1, o2) -> {
-            if(!distances.containsKey(o1))
-                distances.put(o1, distance(o1.getLocation(), origin));
-            if(!distances.containsKey(o2))
-                distances.put(o2, distance(o2.getLocation(), origin));
-
-            return distances.get(o1).compareTo(distances.get(o2));
-        });
-    }
-
-    public static <T extends Entity> Optional<T> getClosestBukkit(Location origin, Stream<T> objects){
-        Map<T, Double> distances = new HashMap<>();
-        return objects.min((o1, o2) -> {
-            if(!distances.containsKey(o1))
-                distances.put(o1, distance(o1.getLocation(), origin));
-            if(!distances.containsKey(o2))
-                distances.put(o2, distance(o2.getLocation(), origin));
-
-            return distances.get(o1).compareTo(distances.get(o2));
-        });
+        return getClosest(origin, objects.iterator());
+    }
+
+    public static <T extends Entity> T getClosestBukkit(Location origin, Collection<T> objects){
+        Location location = new Location(null, 0, 0, 0);
+        T closestObject = null;
+        double closestDistance = Double.MAX_VALUE;
+
+        for(T object : objects){
+            double distance = distance(object.getLocation(location), origin);
+            if(closestObject == null || distance < closestDistance){
+                closestObject = object;
+                closestDistance = distance;
+            }
+        }
+
+        return closestObject;
+    }
+
+    private static <T extends StackedObject> Optional<T> getClosest(Location origin, Iterator<T> objects){
+        T closestObject = null;
+        double closestDistance = Double.MAX_VALUE;
+
+        // The distance of each object is calculated only once, as getting locations of objects creates new objects.
+        while(objects.hasNext()){
+            T object = objects.next();
+            double distance = distance(object.getLocation(), origin);
+            if(closestObject == null || distance < closestDistance){
+                closestObject = object;
+                closestDistance = distance;
+            }
+        }
+
+        return Optional.ofNullable(closestObject);
     }
 
     public static String format(double number){
@@ -0,0 +1,44 @@
+package com.bgsoftware.wildstacker.utils.chunks;
+
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedBarrel;
+import com.bgsoftware.wildstacker.objects.WUnloadedStackedBarrel;
+import org.bukkit.Location;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Each barrel is packed as its stack amount and the index of its item.
+// Barrels share a small amount of distinct items, so each item is only kept once.
+public final class UnloadedBarrelsCache extends UnloadedObjectsCache<UnloadedStackedBarrel> {
+
+    private final List<ItemStack> items = new ArrayList<>();
+    private final Map<ItemStack, Integer> itemIndexes = new HashMap<>();
+
+    public UnloadedBarrelsCache(){
+        super(2);
+    }
+
+    @Override
+    protected void encode(UnloadedStackedBarrel unloadedStackedBarrel, int[] data, int index) {
+        ItemStack barrelItem = unloadedStackedBarrel.getBarrelItem(1);
+        Integer itemIndex = itemIndexes.get(barrelItem);
+
+        if(itemIndex == null){
+            itemIndex = items.size();
+            items.add(barrelItem);
+            itemIndexes.put(barrelItem, itemIndex);
+        }
+
+        data[index] = unloadedStackedBarrel.getStackAmount();
+        data[index + 1] = itemIndex;
+    }
+
+    @Override
+    protected UnloadedStackedBarrel decode(Location location, int[] data, int index) {
+        return new WUnloadedStackedBarrel(location, data[index], items.get(data[index + 1]));
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.bgsoftware.wildstacker.utils.chunks;
+
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedObject;
+import com.bgsoftware.wildstacker.utils.data.structures.Long2IntArrayMap;
+import com.google.common.collect.Maps;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Holds the data of unloaded objects, packed into int arrays for each chunk.
+// Each object takes a fixed amount of ints: the position inside the chunk, followed by its own data.
+// Objects are only created when they are requested, so millions of unloaded objects take only a few ints each.
+public abstract class UnloadedObjectsCache<T extends UnloadedStackedObject> {
+
+    private final Map<String, Long2IntArrayMap> worlds = new HashMap<>();
+    private final int stride;
+
+    private int size = 0;
+
+    protected UnloadedObjectsCache(int dataLength){
+        this.stride = dataLength + 1;
+    }
+
+    public synchronized void put(T object){
+        Location location = object.getLocation();
+        Long2IntArrayMap chunks = worlds.computeIfAbsent(location.getWorld().getName(), s -> new Long2IntArrayMap());
+        long chunkKey = getChunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        int blockOffset = getBlockOffset(location);
+
+        int[] chunkData = chunks.get(chunkKey);
+        int index = chunkData == null ? -1 : indexOf(chunkData, blockOffset);
+
+        if(index < 0){
+            if(chunkData == null){
+                chunkData = new int[stride];
+                index = 0;
+            }
+            else{
+                index = chunkData.length;
+                chunkData = Arrays.copyOf(chunkData, chunkData.length + stride);
+            }
+            chunkData[index] = blockOffset;
+            chunks.put(chunkKey, chunkData);
+            size++;
+        }
+
+        encode(object, chunkData, index + 1);
+    }
+
+    // Updates the data of the object, only if it's still cached.
+    public synchronized void replace(T object){
+        Location location = object.getLocation();
+        int[] chunkData = getChunkData(location.getWorld().getName(), location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        int index = chunkData == null ? -1 : indexOf(chunkData, getBlockOffset(location));
+
+        if(index >= 0)
+            encode(object, chunkData, index + 1);
+    }
+
+    public synchronized void remove(Location location){
+        Long2IntArrayMap chunks = worlds.get(location.getWorld().getName());
+
+        if(chunks == null)
+            return;
+
+        long chunkKey = getChunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        int[] chunkData = chunks.get(chunkKey);
+        int index = chunkData == null ? -1 : indexOf(chunkData, getBlockOffset(location));
+
+        if(index < 0)
+            return;
+
+        if(chunkData.length == stride){
+            chunks.remove(chunkKey);
+        }
+        else{
+            int[] newChunkData = new int[chunkData.length - stride];
+            System.arraycopy(chunkData, 0, newChunkData, 0, index);
+            System.arraycopy(chunkData, index + stride, newChunkData, index, chunkData.length - index - stride);
+            chunks.put(chunkKey, newChunkData);
+        }
+
+        size--;
+    }
+
+    public synchronized boolean containsChunk(ChunkPosition chunkPosition){
+        return getChunkData(chunkPosition.getWorld(), chunkPosition.getX(), chunkPosition.getZ()) != null;
+    }
+
+    // Removes all the objects of the chunk, and returns them mapped by their locations.
+    // Null is returned if the chunk has no cached objects.
+    public synchronized Map<Location, T> removeChunk(ChunkPosition chunkPosition){
+        Long2IntArrayMap chunks = worlds.get(chunkPosition.getWorld());
+        int[] chunkData = chunks == null ? null : chunks.remove(getChunkKey(chunkPosition.getX(), chunkPosition.getZ()));
+
+        if(chunkData == null)
+            return null;
+
+        size -= chunkData.length / stride;
+
+        Map<Location, T> objects = Maps.newConcurrentMap();
+        World world = Bukkit.getWorld(chunkPosition.getWorld());
+
+        if(world != null) {
+            for (int i = 0; i < chunkData.length; i += stride) {
+                Location location = getLocation(world, chunkPosition.getX(), chunkPosition.getZ(), chunkData[i]);
+                T object = decode(location, chunkData, i + 1);
+                if(object != null)
+                    objects.put(location, object);
+            }
+        }
+
+        return objects;
+    }
+
+    public synchronized List<T> values(){
+        List<T> objects = new ArrayList<>(size);
+
+        worlds.forEach((worldName, chunks) -> {
+            World world = Bukkit.getWorld(worldName);
+            if(world != null) {
+                chunks.forEach((chunkKey, chunkData) -> {
+                    int chunkX = (int) (chunkKey >> 32), chunkZ = (int) chunkKey;
+                    for (int i = 0; i < chunkData.length; i += stride) {
+                        T object = decode(getLocation(world, chunkX, chunkZ, chunkData[i]), chunkData, i + 1);
+                        if(object != null)
+                            objects.add(object);
+                    }
+                });
+            }
+        });
+
+        return objects;
+    }
+
+    public synchronized int size(){
+        return size;
+    }
+
+    protected abstract void encode(T object, int[] data, int index);
+
+    protected abstract T decode(Location location, int[] data, int index);
+
+    private int[] getChunkData(String world, int chunkX, int chunkZ){
+        Long2IntArrayMap chunks = worlds.get(world);
+        return chunks == null ? null : chunks.get(getChunkKey(chunkX, chunkZ));
+    }
+
+    private int indexOf(int[] chunkData, int blockOffset){
+        for(int i = 0; i < chunkData.length; i += stride){
+            if(chunkData[i] == blockOffset)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static long getChunkKey(int chunkX, int chunkZ){
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static int getBlockOffset(Location location){
+        return (location.getBlockY() << 8) | ((location.getBlockZ() & 15) << 4) | (location.getBlockX() & 15);
+    }
+
+    private static Location getLocation(World world, int chunkX, int chunkZ, int blockOffset){
+        return new Location(world, (chunkX << 4) + (blockOffset & 15), blockOffset >> 8, (chunkZ << 4) + ((blockOffset >> 4) & 15));
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.bgsoftware.wildstacker.utils.chunks;
+
+import com.bgsoftware.wildstacker.api.objects.UnloadedStackedSpawner;
+import com.bgsoftware.wildstacker.objects.WUnloadedStackedSpawner;
+import org.bukkit.Location;
+
+// Each spawner is packed as its stack amount and upgrade id.
+public final class UnloadedSpawnersCache extends UnloadedObjectsCache<UnloadedStackedSpawner> {
+
+    public UnloadedSpawnersCache(){
+        super(2);
+    }
+
+    @Override
+    protected void encode(UnloadedStackedSpawner unloadedStackedSpawner, int[] data, int index) {
+        data[index] = unloadedStackedSpawner.getStackAmount();
+        data[index + 1] = ((WUnloadedStackedSpawner) unloadedStackedSpawner).getUpgradeId();
+    }
+
+    @Override
+    protected UnloadedStackedSpawner decode(Location location, int[] data, int index) {
+        return new WUnloadedStackedSpawner(location, data[index], data[index + 1]);
+    }
+
+}
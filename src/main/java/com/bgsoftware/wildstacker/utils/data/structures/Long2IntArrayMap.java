@@ -0,0 +1,154 @@
+package com.bgsoftware.wildstacker.utils.data.structures;
+
+import java.util.Arrays;
+
+// Open addressing map between primitive long keys and int arrays, using linear probing.
+// Empty slots are marked by a null value, so no boxed keys or entry objects are ever created.
+public final class Long2IntArrayMap {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private int[][] values;
+    private int size = 0, threshold;
+
+    public Long2IntArrayMap(){
+        this(16);
+    }
+
+    public Long2IntArrayMap(int initSize){
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (initSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity][];
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    public int[] get(long key){
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+
+    public boolean containsKey(long key){
+        return indexOf(key) >= 0;
+    }
+
+    public int[] put(long key, int[] value){
+        if(value == null)
+            throw new IllegalArgumentException("Cannot put null values.");
+
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+
+        while(values[index] != null){
+            if(keys[index] == key){
+                int[] oldValue = values[index];
+                values[index] = value;
+                return oldValue;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+
+        if(++size > threshold)
+            rehash(keys.length << 1);
+
+        return null;
+    }
+
+    public int[] remove(long key){
+        int index = indexOf(key);
+
+        if(index < 0)
+            return null;
+
+        int[] oldValue = values[index];
+        size--;
+
+        // Entries after the removed slot are shifted back, so probing never stops at a hole.
+        int mask = keys.length - 1;
+        int next = (index + 1) & mask;
+
+        while(values[next] != null){
+            int desiredIndex = mix(keys[next]) & mask;
+            if(((next - desiredIndex) & mask) >= ((next - index) & mask)){
+                keys[index] = keys[next];
+                values[index] = values[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+
+        values[index] = null;
+
+        return oldValue;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public void clear(){
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public void forEach(EntryConsumer consumer){
+        for(int i = 0; i < values.length; i++){
+            if(values[i] != null)
+                consumer.accept(keys[i], values[i]);
+        }
+    }
+
+    private int indexOf(long key){
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+
+        while(values[index] != null){
+            if(keys[index] == key)
+                return index;
+            index = (index + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void rehash(int capacity){
+        long[] oldKeys = keys;
+        int[][] oldValues = values;
+
+        keys = new long[capacity];
+        values = new int[capacity][];
+        threshold = (int) (capacity * LOAD_FACTOR);
+
+        int mask = capacity - 1;
+
+        for(int i = 0; i < oldValues.length; i++){
+            if(oldValues[i] != null){
+                int index = mix(oldKeys[i]) & mask;
+                while(values[index] != null)
+                    index = (index + 1) & mask;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private static int mix(long key){
+        // Chunk keys are mostly small and sequential, therefore the bits are spread before masking them.
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    public interface EntryConsumer {
+
+        void accept(long key, int[] value);
+
+    }
+
+}
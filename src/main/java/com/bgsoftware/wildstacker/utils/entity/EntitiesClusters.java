@@ -0,0 +1,244 @@
+package com.bgsoftware.wildstacker.utils.entity;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.api.enums.StackCheckResult;
+import com.bgsoftware.wildstacker.api.enums.StackResult;
+import com.bgsoftware.wildstacker.api.objects.StackedEntity;
+import com.bgsoftware.wildstacker.objects.WStackedEntity;
+import com.bgsoftware.wildstacker.utils.GeneralUtils;
+import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
+import com.bgsoftware.wildstacker.utils.threads.StackService;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stacks all the entities of a region in one pass.
+// Entities are grouped by their similarity, and each group is split into clusters of entities that are within
+// the merge radius of each other, using union-find. Clusters are chained, so entities of a cluster may be farther
+// than the merge radius from each other. Each entity of a cluster is therefore only stacked into a target that is
+// within its merge radius, instead of every entity looking for its own closest entity and stacking chains that take
+// several intervals to settle.
+public final class EntitiesClusters {
+
+    private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
+
+    private static final Set<ChunkPosition> pendingRegions = ConcurrentHashMap.newKeySet();
+
+    private EntitiesClusters(){
+
+    }
+
+    public static void stackRegion(World world, int regionX, int regionZ){
+        ChunkPosition regionPosition = new ChunkPosition(world.getName(), regionX, regionZ);
+
+        // The region is already waiting to be stacked.
+        if(!pendingRegions.add(regionPosition))
+            return;
+
+        int shift = StackService.REGION_SHIFT;
+        Location regionLocation = new Location(world, regionX << shift, 0, regionZ << shift);
+
+        StackService.execute(regionLocation, StackService.StackType.ENTITIES, () -> {
+            pendingRegions.remove(regionPosition);
+
+            // Entities of the chunks around the region are included, so clusters on the borders are stacked as well.
+            int minChunkX = (regionX << shift >> 4) - 1, minChunkZ = (regionZ << shift >> 4) - 1;
+            int maxChunkX = ((regionX + 1) << shift >> 4), maxChunkZ = ((regionZ + 1) << shift >> 4);
+
+            stackEntities(EntitiesGetter.getEntitiesInChunks(world.getName(), minChunkX, minChunkZ, maxChunkX, maxChunkZ));
+        });
+    }
+
+    private static void stackEntities(Collection<Entity> entities){
+        Map<Long, List<List<StackedEntity>>> similarGroups = new HashMap<>();
+
+        for(Entity entity : entities){
+            if(!EntityUtils.isStackable(entity))
+                continue;
+
+            StackedEntity stackedEntity = WStackedEntity.of(entity);
+
+            if(!stackedEntity.isCached() || stackedEntity.getMergeRadius() <= 0 || stackedEntity.getStackLimit() <= 1)
+                continue;
+
+            // Entities are only compared to the first entity of each group with the same fingerprint.
+            List<List<StackedEntity>> fingerprintGroups = similarGroups.computeIfAbsent(
+                    ((WStackedEntity) stackedEntity).getSimilarityFingerprint(), fingerprint -> new ArrayList<>());
+            List<StackedEntity> similarGroup = null;
+
+            for(List<StackedEntity> fingerprintGroup : fingerprintGroups){
+                if(EntityUtils.areSimilar(fingerprintGroup.get(0).getLivingEntity(), stackedEntity.getLivingEntity()) == StackCheckResult.SUCCESS){
+                    similarGroup = fingerprintGroup;
+                    break;
+                }
+            }
+
+            if(similarGroup == null)
+                fingerprintGroups.add(similarGroup = new ArrayList<>());
+
+            similarGroup.add(stackedEntity);
+        }
+
+        for(List<List<StackedEntity>> fingerprintGroups : similarGroups.values()){
+            for(List<StackedEntity> similarGroup : fingerprintGroups){
+                if(similarGroup.size() > 1) {
+                    for (List<StackedEntity> cluster : getClusters(similarGroup))
+                        stackCluster(cluster);
+                }
+            }
+        }
+    }
+
+    private static Collection<List<StackedEntity>> getClusters(List<StackedEntity> entities){
+        int range = entities.get(0).getMergeRadius();
+        int size = entities.size();
+
+        int[] parents = new int[size];
+        int[][] positions = new int[size][];
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        Location location = new Location(null, 0, 0, 0);
+
+        // Entities of the same cell are always within the range of each other.
+        for(int i = 0; i < size; i++){
+            entities.get(i).getLivingEntity().getLocation(location);
+            positions[i] = new int[] {location.getBlockX(), location.getBlockY(), location.getBlockZ()};
+            parents[i] = i;
+
+            List<Integer> cell = cells.computeIfAbsent(getCellKey(positions[i], range), key -> new ArrayList<>());
+            if(!cell.isEmpty())
+                union(parents, cell.get(0), i);
+            cell.add(i);
+        }
+
+        // Entities of neighbour cells are only checked against entities of other clusters.
+        for(List<Integer> cell : cells.values()){
+            int[] cellPosition = getCell(positions[cell.get(0)], range);
+
+            for(int x = -1; x <= 1; x++){
+                for(int y = -1; y <= 1; y++){
+                    for(int z = -1; z <= 1; z++){
+                        List<Integer> neighbourCell = cells.get(GeneralUtils.getBlockKey(cellPosition[0] + x,
+                                cellPosition[1] + y, cellPosition[2] + z));
+
+                        if(neighbourCell == null || neighbourCell == cell)
+                            continue;
+
+                        for(int entity : cell){
+                            for(int neighbour : neighbourCell){
+                                if(find(parents, entity) != find(parents, neighbour) && isInRange(positions[entity], positions[neighbour], range))
+                                    union(parents, entity, neighbour);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<Integer, List<StackedEntity>> clusters = new HashMap<>();
+
+        for(int i = 0; i < size; i++)
+            clusters.computeIfAbsent(find(parents, i), root -> new ArrayList<>()).add(entities.get(i));
+
+        return clusters.values();
+    }
+
+    private static void stackCluster(List<StackedEntity> cluster){
+        if(cluster.size() < 2)
+            return;
+
+        StackedEntity firstEntity = cluster.get(0);
+        int minimumStackSize = GeneralUtils.get(plugin.getSettings().minimumRequiredEntities, firstEntity, 1);
+
+        if(minimumStackSize > 2){
+            int totalStackSize = 0;
+
+            for(StackedEntity stackedEntity : cluster)
+                totalStackSize += stackedEntity.getStackAmount();
+
+            if(totalStackSize < minimumStackSize)
+                return;
+        }
+
+        // Entities are stacked into the lowest entity when stacking down, otherwise into the biggest stack.
+        if(plugin.getSettings().stackDownEnabled && GeneralUtils.contains(plugin.getSettings().stackDownTypes, firstEntity)) {
+            cluster.sort(Comparator.comparingDouble(stackedEntity -> stackedEntity.getLivingEntity().getLocation().getY()));
+        }
+        else {
+            cluster.sort(Comparator.comparingInt(StackedEntity::getStackAmount).reversed());
+        }
+
+        int range = firstEntity.getMergeRadius();
+        Map<StackedEntity, int[]> positions = new IdentityHashMap<>();
+        Location location = new Location(null, 0, 0, 0);
+
+        for(StackedEntity stackedEntity : cluster){
+            stackedEntity.getLivingEntity().getLocation(location);
+            positions.put(stackedEntity, new int[] {location.getBlockX(), location.getBlockY(), location.getBlockZ()});
+        }
+
+        // Entities that couldn't be stacked (due to limits, cancelled events or being out of the range of the target)
+        // are stacked into the next entity, or are left for the next pass.
+        while(cluster.size() > 1){
+            StackedEntity targetEntity = cluster.remove(0);
+            int[] targetPosition = positions.get(targetEntity);
+
+            List<StackedEntity> nearbyEntities = new ArrayList<>();
+            int totalStackSize = targetEntity.getStackAmount();
+
+            for(StackedEntity stackedEntity : cluster){
+                if(isInRange(targetPosition, positions.get(stackedEntity), range)) {
+                    nearbyEntities.add(stackedEntity);
+                    totalStackSize += stackedEntity.getStackAmount();
+                }
+            }
+
+            if(nearbyEntities.isEmpty() || (minimumStackSize > 2 && totalStackSize < minimumStackSize))
+                continue;
+
+            for(StackedEntity stackedEntity : nearbyEntities){
+                if(stackedEntity.runStack(targetEntity) == StackResult.SUCCESS)
+                    cluster.remove(stackedEntity);
+            }
+        }
+    }
+
+    private static int find(int[] parents, int index){
+        while(parents[index] != index){
+            parents[index] = parents[parents[index]];
+            index = parents[index];
+        }
+
+        return index;
+    }
+
+    private static void union(int[] parents, int first, int second){
+        parents[find(parents, second)] = find(parents, first);
+    }
+
+    private static int[] getCell(int[] position, int range){
+        // Stacking ranges are boxes, so cells are as big as the range.
+        int cellSize = range + 1;
+        return new int[] {Math.floorDiv(position[0], cellSize), Math.floorDiv(position[1], cellSize), Math.floorDiv(position[2], cellSize)};
+    }
+
+    private static long getCellKey(int[] position, int range){
+        int[] cell = getCell(position, range);
+        return GeneralUtils.getBlockKey(cell[0], cell[1], cell[2]);
+    }
+
+    private static boolean isInRange(int[] first, int[] second, int range){
+        return Math.abs(first[0] - second[0]) <= range && Math.abs(first[1] - second[1]) <= range &&
+                Math.abs(first[2] - second[2]) <= range;
+    }
+
+}
@@ -1,40 +1,254 @@
 package com.bgsoftware.wildstacker.utils.entity;
 
-import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.utils.GeneralUtils;
 import com.bgsoftware.wildstacker.utils.chunks.ChunkPosition;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.entity.Entity;
-import org.jetbrains.annotations.NotNull;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Item;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-@SuppressWarnings("UnstableApiUsage")
+// Index of all the entities in loaded chunks, which is kept updated by spawns, removals, chunk loads, teleports and
+// movements (on Paper, which has move events for all the living entities), so the index never needs to be rebuilt.
+// Entities that have no move events (such as items, or all the non-player entities on Spigot) are only moved in
+// the index by a fallback scan, which is spread across ticks, and each tick only checks a fixed amount of entities.
+// Entities of each chunk are bucketed by their types, and items by their materials, so stacking only checks
+// entities that can actually be stacked together.
+// Entities that spawned, moved to another block or changed their stack amount are marked as dirty, so the
+// periodic stacking tasks only need to check them instead of all the entities.
 public final class EntitiesGetter {
 
-    private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
+    private static final Map<ChunkPosition, Map<Enum<?>, Set<Entity>>> entitiesByChunks = new ConcurrentHashMap<>();
+    private static final Map<Entity, IndexedEntity> entitiesChunks = new ConcurrentHashMap<>();
 
-    private static final LoadingCache<ChunkPosition, Collection<Entity>> entitiesCache = CacheBuilder.newBuilder()
-            .expireAfterWrite(5, TimeUnit.SECONDS)
-            .build(new CacheLoader<ChunkPosition, Collection<Entity>>() {
-                @Override
-                public Collection<Entity> load(@NotNull ChunkPosition chunkPosition) {
-                    return plugin.getNMSAdapter().getEntitiesAtChunk(chunkPosition);
-                }
-            });
+    private static final Set<Entity> dirtyEntities = ConcurrentHashMap.newKeySet();
+    private static final Set<Entity> dirtyItems = ConcurrentHashMap.newKeySet();
+
+    // The amount of indexed entities that are checked for movement every tick by the fallback scan.
+    private static final int UPDATE_SLICE_SIZE = 1000;
+    // The scan continues from where the previous tick stopped, and starts over once all the entities were checked.
+    private static Iterator<Map.Entry<Entity, IndexedEntity>> updateIterator = null;
+
+    // Queries are made from both the main thread and the stacking threads, so each thread has its own buffer.
+    private static final ThreadLocal<Location> cachedLocation = ThreadLocal.withInitial(() -> new Location(null, 0, 0, 0));
+
+    private EntitiesGetter(){
+
+    }
 
     public static void handleEntitySpawn(Entity entity){
-        ChunkPosition chunkPosition = new ChunkPosition(entity.getLocation());
-        entitiesCache.getUnchecked(chunkPosition).add(entity);
+        addEntity(entity, new ChunkPosition(entity.getLocation()));
+        markDirty(entity);
+    }
+
+    public static void handleEntityRemove(Entity entity){
+        IndexedEntity indexedEntity = entitiesChunks.remove(entity);
+        if(indexedEntity != null)
+            removeEntity(entity, indexedEntity);
+        getDirtySet(entity).remove(entity);
+    }
+
+    public static void handleChunkLoad(Chunk chunk){
+        ChunkPosition chunkPosition = new ChunkPosition(chunk);
+        for(Entity entity : chunk.getEntities()) {
+            addEntity(entity, chunkPosition);
+            markDirty(entity);
+        }
+    }
+
+    public static void handleChunkUnload(Chunk chunk){
+        Map<Enum<?>, Set<Entity>> chunkEntities = entitiesByChunks.remove(new ChunkPosition(chunk));
+        if(chunkEntities != null) {
+            chunkEntities.values().forEach(bucket -> bucket.forEach(entity -> {
+                entitiesChunks.remove(entity);
+                getDirtySet(entity).remove(entity);
+            }));
+        }
+    }
+
+    // Called before the entity is moved, so the index is updated with the location the entity is moved to.
+    public static void handleEntityMove(Entity entity, Location location){
+        IndexedEntity indexedEntity = entitiesChunks.get(entity);
+        if(indexedEntity != null)
+            updateEntity(entity, indexedEntity, location);
+    }
+
+    // Adds entities of the chunk that are not in the index yet, such as entities that were moved from other worlds.
+    public static void handleChunkEntities(Chunk chunk){
+        ChunkPosition chunkPosition = null;
+
+        for(Entity entity : chunk.getEntities()) {
+            if(!entitiesChunks.containsKey(entity)) {
+                if(chunkPosition == null)
+                    chunkPosition = new ChunkPosition(chunk);
+                addEntity(entity, chunkPosition);
+                markDirty(entity);
+            }
+        }
+    }
+
+    public static void markDirty(Entity entity){
+        getDirtySet(entity).add(entity);
+    }
+
+    // Returns all the living entities that are dirty, and clears them.
+    public static List<Entity> pollDirtyEntities(){
+        return pollDirty(dirtyEntities);
+    }
+
+    // Returns all the items that are dirty, and clears them.
+    public static List<Entity> pollDirtyItems(){
+        return pollDirty(dirtyItems);
+    }
+
+    // Called every tick from the main thread, as a fallback for entities that moved without any event.
+    public static void updateEntities(){
+        Iterator<Map.Entry<Entity, IndexedEntity>> iterator = updateIterator;
+
+        for(int checkedEntities = 0; checkedEntities < UPDATE_SLICE_SIZE; checkedEntities++){
+            if(iterator == null || !iterator.hasNext()) {
+                // Starting over only once per tick, so small indexes are not checked more than once a tick.
+                if(iterator != null && checkedEntities > 0) {
+                    iterator = null;
+                    break;
+                }
+
+                iterator = entitiesChunks.entrySet().iterator();
+
+                if(!iterator.hasNext())
+                    break;
+            }
+
+            Entity entity = iterator.next().getKey();
+            // The iterator is kept between ticks, so the entry may be outdated already.
+            IndexedEntity indexedEntity = entitiesChunks.get(entity);
+
+            if(indexedEntity == null)
+                continue;
+
+            if(!entity.isValid()){
+                entitiesChunks.remove(entity);
+                removeEntity(entity, indexedEntity);
+                getDirtySet(entity).remove(entity);
+                continue;
+            }
+
+            updateEntity(entity, indexedEntity, entity.getLocation(cachedLocation.get()));
+        }
+
+        updateIterator = iterator;
     }
 
     public static Collection<Entity> getNearbyEntities(Location location, int range, Predicate<Entity> filter){
+        return getNearbyEntities(location, range, null, filter);
+    }
+
+    public static Collection<Entity> getNearbyEntities(Location location, int range, EntityType entityType, Predicate<Entity> filter){
+        return getNearbyEntitiesInBucket(location, range, entityType, filter);
+    }
+
+    public static Collection<Entity> getNearbyItems(Location location, int range, Material material, Predicate<Entity> filter){
+        return getNearbyEntitiesInBucket(location, range, material, filter);
+    }
+
+    // Collects all the living entities inside the given chunks.
+    public static List<Entity> getEntitiesInChunks(String worldName, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ){
+        List<Entity> entities = new ArrayList<>();
+
+        for (int x = minChunkX; x <= maxChunkX; x++){
+            for (int z = minChunkZ; z <= maxChunkZ; z++){
+                Map<Enum<?>, Set<Entity>> chunkEntities = entitiesByChunks.get(new ChunkPosition(worldName, x, z));
+
+                if(chunkEntities == null)
+                    continue;
+
+                for(Map.Entry<Enum<?>, Set<Entity>> bucketEntities : chunkEntities.entrySet()){
+                    if(bucketEntities.getKey() instanceof EntityType) {
+                        for (Entity entity : bucketEntities.getValue()) {
+                            if (entity.isValid())
+                                entities.add(entity);
+                        }
+                    }
+                }
+            }
+        }
+
+        return entities;
+    }
+
+    public static Entity getClosestEntity(Location origin, int range, EntityType entityType, Predicate<Entity> filter){
+        return getClosestEntityInBucket(origin, range, entityType, filter);
+    }
+
+    public static Entity getClosestItem(Location origin, int range, Material material, Predicate<Entity> filter){
+        return getClosestEntityInBucket(origin, range, material, filter);
+    }
+
+    // Finds the closest entity that matches the filter in a single pass, without collecting the candidates.
+    // The filter is only tested for entities that are closer than the closest match so far, and chunks that
+    // are farther than that match are not checked at all.
+    private static Entity getClosestEntityInBucket(Location origin, int range, Enum<?> bucket, Predicate<Entity> filter){
+        double originX = origin.getX(), originY = origin.getY(), originZ = origin.getZ();
+        int minX = origin.getBlockX() - range, minY = origin.getBlockY() - range, minZ = origin.getBlockZ() - range;
+        int maxX = origin.getBlockX() + range, maxY = origin.getBlockY() + range, maxZ = origin.getBlockZ() + range;
+
+        int minChunkX = minX >> 4, maxChunkX = maxX >> 4, minChunkZ = minZ >> 4, maxChunkZ = maxZ >> 4;
+
+        World world = origin.getWorld();
+        String worldName = world.getName();
+        Location location = cachedLocation.get();
+
+        Entity closestEntity = null;
+        double closestDistance = Double.MAX_VALUE;
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++){
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++){
+                if(getDistanceToChunk(originX, originZ, chunkX, chunkZ) >= closestDistance)
+                    continue;
+
+                Map<Enum<?>, Set<Entity>> chunkEntities = entitiesByChunks.get(new ChunkPosition(worldName, chunkX, chunkZ));
+                Set<Entity> bucketEntities = chunkEntities == null ? null : chunkEntities.get(bucket);
+
+                if(bucketEntities == null)
+                    continue;
+
+                for(Entity entity : bucketEntities){
+                    if(!entity.isValid())
+                        continue;
+
+                    entity.getLocation(location);
+
+                    if(location.getWorld() != world || !isInRange(location, minX, minY, minZ, maxX, maxY, maxZ))
+                        continue;
+
+                    double deltaX = location.getX() - originX, deltaY = location.getY() - originY, deltaZ = location.getZ() - originZ;
+                    double distance = deltaX * deltaX + deltaY * deltaY + deltaZ * deltaZ;
+
+                    if(distance < closestDistance && (filter == null || filter.test(entity))){
+                        closestEntity = entity;
+                        closestDistance = distance;
+                    }
+                }
+            }
+        }
+
+        return closestEntity;
+    }
+
+    // Collects the entities of the given bucket, or entities of all the buckets if the bucket is null.
+    private static Collection<Entity> getNearbyEntitiesInBucket(Location location, int range, Enum<?> bucket, Predicate<Entity> filter){
         int minX = location.getBlockX() - range;
         int minY = location.getBlockY() - range;
         int minZ = location.getBlockZ() - range;
@@ -46,18 +260,108 @@ public final class EntitiesGetter {
 
         String worldName = location.getWorld().getName();
 
-        Stream<Entity> entities = Stream.empty();
+        Collection<Entity> entities = new ArrayList<>();
 
         for (int x = minChunkX; x <= maxChunkX; x++){
             for (int z = minChunkZ; z <= maxChunkZ; z++){
-                entities = Stream.concat(entities, entitiesCache.getUnchecked(new ChunkPosition(worldName, x, z)).stream());
+                Map<Enum<?>, Set<Entity>> chunkEntities = entitiesByChunks.get(new ChunkPosition(worldName, x, z));
+
+                if(chunkEntities == null)
+                    continue;
+
+                if(bucket == null){
+                    for(Set<Entity> bucketEntities : chunkEntities.values())
+                        collectEntities(bucketEntities, entities, minX, minY, minZ, maxX, maxY, maxZ, filter);
+                }
+                else{
+                    Set<Entity> bucketEntities = chunkEntities.get(bucket);
+                    if(bucketEntities != null)
+                        collectEntities(bucketEntities, entities, minX, minY, minZ, maxX, maxY, maxZ, filter);
+                }
             }
         }
 
-        return entities.filter(entity ->
-                isInRange(entity.getLocation(), minX, minY, minZ, maxX, maxY, maxZ) &&
-                (filter == null || filter.test(entity))
-        ).collect(Collectors.toList());
+        return entities;
+    }
+
+    private static void collectEntities(Set<Entity> bucketEntities, Collection<Entity> entities, int minX, int minY, int minZ,
+                                        int maxX, int maxY, int maxZ, Predicate<Entity> filter){
+        Location location = cachedLocation.get();
+
+        for (Entity entity : bucketEntities) {
+            // Entities that were removed since the last update are still in the index.
+            if (entity.isValid() && isInRange(entity.getLocation(location), minX, minY, minZ, maxX, maxY, maxZ) &&
+                    (filter == null || filter.test(entity)))
+                entities.add(entity);
+        }
+    }
+
+    private static void updateEntity(Entity entity, IndexedEntity indexedEntity, Location location){
+        ChunkPosition chunkPosition = indexedEntity.chunkPosition;
+        int chunkX = location.getBlockX() >> 4, chunkZ = location.getBlockZ() >> 4;
+        World world = location.getWorld();
+
+        if(chunkPosition.getX() != chunkX || chunkPosition.getZ() != chunkZ || !chunkPosition.getWorld().equals(world.getName())) {
+            indexedEntity = addEntity(entity, new ChunkPosition(world.getName(), chunkX, chunkZ));
+        }
+
+        long blockKey = GeneralUtils.getBlockKey(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+
+        if(indexedEntity.blockKey != blockKey){
+            indexedEntity.blockKey = blockKey;
+            markDirty(entity);
+        }
+    }
+
+    private static IndexedEntity addEntity(Entity entity, ChunkPosition chunkPosition){
+        IndexedEntity indexedEntity = new IndexedEntity(chunkPosition, getBucket(entity));
+        IndexedEntity oldIndexedEntity = entitiesChunks.put(entity, indexedEntity);
+
+        if(oldIndexedEntity != null) {
+            removeEntity(entity, oldIndexedEntity);
+            indexedEntity.blockKey = oldIndexedEntity.blockKey;
+        }
+
+        entitiesByChunks.computeIfAbsent(chunkPosition, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(indexedEntity.bucket, s -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(entity);
+
+        return indexedEntity;
+    }
+
+    private static void removeEntity(Entity entity, IndexedEntity indexedEntity){
+        entitiesByChunks.computeIfPresent(indexedEntity.chunkPosition, (s, chunkEntities) -> {
+            chunkEntities.computeIfPresent(indexedEntity.bucket, (b, bucketEntities) -> {
+                bucketEntities.remove(entity);
+                return bucketEntities.isEmpty() ? null : bucketEntities;
+            });
+            return chunkEntities.isEmpty() ? null : chunkEntities;
+        });
+    }
+
+    private static List<Entity> pollDirty(Set<Entity> dirtySet){
+        List<Entity> entities = new ArrayList<>(dirtySet.size());
+
+        for(Iterator<Entity> iterator = dirtySet.iterator(); iterator.hasNext();){
+            entities.add(iterator.next());
+            iterator.remove();
+        }
+
+        return entities;
+    }
+
+    private static Set<Entity> getDirtySet(Entity entity){
+        return entity instanceof Item ? dirtyItems : dirtyEntities;
+    }
+
+    private static Enum<?> getBucket(Entity entity){
+        return entity instanceof Item ? ((Item) entity).getItemStack().getType() : entity.getType();
+    }
+
+    private static double getDistanceToChunk(double x, double z, int chunkX, int chunkZ){
+        double minX = chunkX << 4, minZ = chunkZ << 4;
+        double deltaX = x < minX ? minX - x : Math.max(0, x - (minX + 16));
+        double deltaZ = z < minZ ? minZ - z : Math.max(0, z - (minZ + 16));
+        return deltaX * deltaX + deltaZ * deltaZ;
     }
 
     private static boolean isInRange(Location location, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
@@ -65,4 +369,17 @@ public final class EntitiesGetter {
         return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
     }
 
+    private static final class IndexedEntity {
+
+        private final ChunkPosition chunkPosition;
+        private final Enum<?> bucket;
+        private long blockKey = Long.MIN_VALUE;
+
+        IndexedEntity(ChunkPosition chunkPosition, Enum<?> bucket){
+            this.chunkPosition = chunkPosition;
+            this.bucket = bucket;
+        }
+
+    }
+
 }
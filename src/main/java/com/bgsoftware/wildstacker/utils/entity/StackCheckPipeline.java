@@ -0,0 +1,257 @@
+package com.bgsoftware.wildstacker.utils.entity;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.bgsoftware.wildstacker.api.enums.StackCheckResult;
+import com.bgsoftware.wildstacker.utils.legacy.EntityTypes;
+import org.bukkit.entity.AbstractHorse;
+import org.bukkit.entity.Ageable;
+import org.bukkit.entity.Bat;
+import org.bukkit.entity.Cat;
+import org.bukkit.entity.Enderman;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Guardian;
+import org.bukkit.entity.Horse;
+import org.bukkit.entity.Llama;
+import org.bukkit.entity.MushroomCow;
+import org.bukkit.entity.Ocelot;
+import org.bukkit.entity.Parrot;
+import org.bukkit.entity.Phantom;
+import org.bukkit.entity.Pig;
+import org.bukkit.entity.PigZombie;
+import org.bukkit.entity.PufferFish;
+import org.bukkit.entity.Rabbit;
+import org.bukkit.entity.Sheep;
+import org.bukkit.entity.Skeleton;
+import org.bukkit.entity.Slime;
+import org.bukkit.entity.Tameable;
+import org.bukkit.entity.TropicalFish;
+import org.bukkit.entity.Villager;
+import org.bukkit.entity.Wolf;
+import org.bukkit.entity.Zombie;
+import org.bukkit.entity.ZombieVillager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+// Compiles the enabled vanilla stack checks into an array for each entity type, so comparing two entities only
+// runs the checks that are enabled and can apply to their type, instead of going through all the checks.
+// The pipelines are compiled when the settings are loaded, and therefore are rebuilt on every reload.
+public final class StackCheckPipeline {
+
+    private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
+
+    private static final SimilarityCheck[] EMPTY_PIPELINE = new SimilarityCheck[0];
+
+    // All the vanilla checks, in the order they are compared.
+    private static final List<SimilarityCheck> similarityChecks = new ArrayList<>();
+
+    private static volatile Map<EntityTypes, SimilarityCheck[]> pipelines = new EnumMap<>(EntityTypes.class);
+
+    static {
+        // Babies grow up without any event, so the age is never part of the fingerprint.
+        register(StackCheck.AGE, (en1, en2) -> !(en1 instanceof Ageable) ||
+                (((Ageable) en1).getAge() >= 0) == (((Ageable) en2).getAge() >= 0));
+
+        register(StackCheck.EXACT_AGE, (en1, en2) -> !(en1 instanceof Ageable) ||
+                ((Ageable) en1).getAge() == ((Ageable) en2).getAge());
+
+        registerAttribute(StackCheck.IS_TAMED, entity -> entity instanceof Tameable ? ((Tameable) entity).isTamed() : null);
+
+        register(StackCheck.ANIMAL_OWNER, (en1, en2) -> !(en1 instanceof Tameable) ||
+                Objects.equals(((Tameable) en1).getOwner(), ((Tameable) en2).getOwner()));
+
+        registerAttribute(StackCheck.SKELETON_TYPE, entity -> {
+            try {
+                return ((Skeleton) entity).getSkeletonType();
+            }catch(Throwable ignored){
+                return null;
+            }
+        });
+
+        registerAttribute(StackCheck.ZOMBIE_BABY, entity -> ((Zombie) entity).isBaby());
+
+        registerAttribute(StackCheck.SLIME_SIZE, entity -> ((Slime) entity).getSize());
+
+        register(StackCheck.ZOMBIE_PIGMAN_ANGRY, (en1, en2) ->
+                (((PigZombie) en1).getAnger() >= 0) == (((PigZombie) en2).getAnger() >= 0));
+
+        register(StackCheck.ENDERMAN_CARRIED_BLOCK, (en1, en2) -> plugin.getNMSAdapter().getEndermanCarried((Enderman) en1)
+                .equals(plugin.getNMSAdapter().getEndermanCarried((Enderman) en2)));
+
+        register(StackCheck.BAT_AWAKE, (en1, en2) -> ((Bat) en1).isAwake() == ((Bat) en2).isAwake());
+
+        registerAttribute(StackCheck.GUARDIAN_ELDER, entity -> ((Guardian) entity).isElder());
+
+        // Dispensers can saddle pigs and shear sheep without any event in some versions.
+        register(StackCheck.PIG_SADDLE, (en1, en2) -> ((Pig) en1).hasSaddle() == ((Pig) en2).hasSaddle());
+
+        register(StackCheck.SHEEP_SHEARED, (en1, en2) -> ((Sheep) en1).isSheared() == ((Sheep) en2).isSheared());
+
+        registerAttribute(StackCheck.SHEEP_COLOR, entity -> ((Sheep) entity).getColor());
+
+        register(StackCheck.WOLF_ANGRY, (en1, en2) -> ((Wolf) en1).isAngry() == ((Wolf) en2).isAngry());
+
+        registerAttribute(StackCheck.WOLF_COLLAR_COLOR, entity -> ((Wolf) entity).getCollarColor());
+
+        registerAttribute(StackCheck.OCELOT_TYPE, entity -> ((Ocelot) entity).getCatType());
+
+        registerAttribute(StackCheck.CAT_TYPE, entity -> ((Cat) entity).getCatType());
+
+        registerAttribute(StackCheck.CAT_COLLAR_COLOR, entity -> ((Cat) entity).getCollarColor());
+
+        registerAttribute(StackCheck.HORSE_TYPE, entity -> entity instanceof Horse ?
+                ((Horse) entity).getVariant() : ((AbstractHorse) entity).getVariant());
+
+        registerAttribute(StackCheck.HORSE_COLOR, entity -> entity instanceof Horse ? ((Horse) entity).getColor() : null);
+
+        registerAttribute(StackCheck.HORSE_STYLE, entity -> entity instanceof Horse ? ((Horse) entity).getStyle() : null);
+
+        registerAttribute(StackCheck.HORSE_CARRYING_CHEST, entity -> entity instanceof Horse ?
+                ((Horse) entity).isCarryingChest() : null);
+
+        register(StackCheck.HORSE_TAME_PROGRESS, (en1, en2) -> en1 instanceof Horse ?
+                ((Horse) en1).getDomestication() == ((Horse) en2).getDomestication() :
+                ((AbstractHorse) en1).getDomestication() == ((AbstractHorse) en2).getDomestication());
+
+        register(StackCheck.HORSE_MAX_TAME_PROGRESS, (en1, en2) -> en1 instanceof Horse ?
+                ((Horse) en1).getMaxDomestication() == ((Horse) en2).getMaxDomestication() :
+                ((AbstractHorse) en1).getMaxDomestication() == ((AbstractHorse) en2).getMaxDomestication());
+
+        register(StackCheck.HORSE_JUMP, (en1, en2) -> en1 instanceof Horse ?
+                ((Horse) en1).getJumpStrength() == ((Horse) en2).getJumpStrength() :
+                ((AbstractHorse) en1).getJumpStrength() == ((AbstractHorse) en2).getJumpStrength());
+
+        registerAttribute(StackCheck.RABBIT_TYPE, entity -> ((Rabbit) entity).getRabbitType());
+
+        similarityChecks.add(new SimilarityCheck(StackCheck.VILLAGER_PROFESSION, null, (en1, en2) -> {
+            if(en1 instanceof Villager) {
+                if (((Villager) en1).getProfession() != ((Villager) en2).getProfession())
+                    return StackCheckResult.VILLAGER_PROFESSION;
+            }else if(en1 instanceof Zombie){
+                if (((Zombie) en1).isVillager() != ((Zombie) en2).isVillager())
+                    return StackCheckResult.NOT_SIMILAR;
+                try{
+                    if(en1 instanceof ZombieVillager){
+                        if (((ZombieVillager) en1).getVillagerProfession() != ((ZombieVillager) en2).getVillagerProfession())
+                            return StackCheckResult.VILLAGER_PROFESSION;
+                    }
+                }catch(Throwable ignored){}
+            }
+
+            return StackCheckResult.SUCCESS;
+        }));
+
+        registerAttribute(StackCheck.LLAMA_COLOR, entity -> ((Llama) entity).getColor());
+
+        registerAttribute(StackCheck.LLAMA_STRENGTH, entity -> ((Llama) entity).getStrength());
+
+        registerAttribute(StackCheck.PARROT_TYPE, entity -> ((Parrot) entity).getVariant());
+
+        register(StackCheck.PUFFERFISH_STATE, (en1, en2) -> ((PufferFish) en1).getPuffState() == ((PufferFish) en2).getPuffState());
+
+        registerAttribute(StackCheck.TROPICALFISH_TYPE, entity -> ((TropicalFish) entity).getPattern());
+
+        registerAttribute(StackCheck.TROPICALFISH_BODY_COLOR, entity -> ((TropicalFish) entity).getBodyColor());
+
+        registerAttribute(StackCheck.TROPICALFISH_TYPE_COLOR, entity -> ((TropicalFish) entity).getPatternColor());
+
+        registerAttribute(StackCheck.PHANTOM_SIZE, entity -> ((Phantom) entity).getSize());
+
+        // Mooshrooms that are struck by lightning change their type without any event.
+        register(StackCheck.MOOSHROOM_TYPE, (en1, en2) -> plugin.getNMSAdapter().getMooshroomType((MushroomCow) en1) ==
+                plugin.getNMSAdapter().getMooshroomType((MushroomCow) en2));
+    }
+
+    private StackCheckPipeline(){
+
+    }
+
+    public static void compile(){
+        Map<EntityTypes, SimilarityCheck[]> pipelines = new EnumMap<>(EntityTypes.class);
+
+        for(EntityTypes entityType : EntityTypes.values()){
+            List<SimilarityCheck> pipeline = new ArrayList<>();
+
+            for(SimilarityCheck similarityCheck : similarityChecks){
+                if(similarityCheck.stackCheck.isEnabled() && similarityCheck.stackCheck.isTypeAllowed(entityType))
+                    pipeline.add(similarityCheck);
+            }
+
+            if(!pipeline.isEmpty())
+                pipelines.put(entityType, pipeline.toArray(EMPTY_PIPELINE));
+        }
+
+        // The pipelines are replaced at once, so stacking threads never see a pipeline that is half-built.
+        StackCheckPipeline.pipelines = pipelines;
+    }
+
+    public static StackCheckResult runChecks(EntityTypes entityType, Entity en1, Entity en2){
+        for(SimilarityCheck similarityCheck : pipelines.getOrDefault(entityType, EMPTY_PIPELINE)){
+            StackCheckResult stackCheckResult = similarityCheck.function.apply(en1, en2);
+            if(stackCheckResult != StackCheckResult.SUCCESS)
+                return stackCheckResult;
+        }
+
+        return StackCheckResult.SUCCESS;
+    }
+
+    // Packs the attributes that are compared by the pipeline of the entity's type into a single number.
+    // Entities with different fingerprints can never be stacked together, while entities with the same fingerprint
+    // still need to be compared by runChecks. Checks of attributes that can change without any event (such as anger,
+    // age or professions of villagers) are not part of the fingerprint, and are only compared by runChecks.
+    public static long getFingerprint(EntityTypes entityType, Entity entity){
+        long fingerprint = entityType.ordinal();
+
+        for(SimilarityCheck similarityCheck : pipelines.getOrDefault(entityType, EMPTY_PIPELINE)){
+            if(similarityCheck.attribute != null)
+                fingerprint = fingerprint * 31 + Objects.hashCode(similarityCheck.attribute.apply(entity));
+        }
+
+        return fingerprint;
+    }
+
+    public static List<StackCheck> getChecks(EntityTypes entityType){
+        List<StackCheck> stackChecks = new ArrayList<>();
+
+        for(SimilarityCheck similarityCheck : pipelines.getOrDefault(entityType, EMPTY_PIPELINE))
+            stackChecks.add(similarityCheck.stackCheck);
+
+        return Collections.unmodifiableList(stackChecks);
+    }
+
+    private static void register(StackCheck stackCheck, BiPredicate<Entity, Entity> similar){
+        StackCheckResult failedResult = StackCheckResult.valueOf(stackCheck.name());
+        similarityChecks.add(new SimilarityCheck(stackCheck, null, (en1, en2) ->
+                similar.test(en1, en2) ? StackCheckResult.SUCCESS : failedResult));
+    }
+
+    // Checks of attributes that are never changed without an event, so they are also part of the fingerprints of entities.
+    // The events that change them must invalidate the fingerprints, see EntitiesListener.
+    private static void registerAttribute(StackCheck stackCheck, Function<Entity, Object> attribute){
+        StackCheckResult failedResult = StackCheckResult.valueOf(stackCheck.name());
+        similarityChecks.add(new SimilarityCheck(stackCheck, attribute, (en1, en2) ->
+                Objects.equals(attribute.apply(en1), attribute.apply(en2)) ? StackCheckResult.SUCCESS : failedResult));
+    }
+
+    private static final class SimilarityCheck {
+
+        private final StackCheck stackCheck;
+        private final Function<Entity, Object> attribute;
+        private final BiFunction<Entity, Entity, StackCheckResult> function;
+
+        SimilarityCheck(StackCheck stackCheck, Function<Entity, Object> attribute, BiFunction<Entity, Entity, StackCheckResult> function){
+            this.stackCheck = stackCheck;
+            this.attribute = attribute;
+            this.function = function;
+        }
+
+    }
+
+}
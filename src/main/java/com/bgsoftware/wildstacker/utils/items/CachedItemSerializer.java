@@ -0,0 +1,50 @@
+package com.bgsoftware.wildstacker.utils.items;
+
+import com.bgsoftware.wildstacker.WildStackerPlugin;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.bukkit.inventory.ItemStack;
+
+public final class CachedItemSerializer {
+
+    private static final WildStackerPlugin plugin = WildStackerPlugin.getPlugin();
+
+    // Most of the stacked barrels hold the same few items, so encoding them again on every save is wasteful.
+    private static final Cache<ItemStack, String> serializedItems = CacheBuilder.newBuilder().maximumSize(1024).build();
+    private static final Cache<String, ItemStack> deserializedItems = CacheBuilder.newBuilder().maximumSize(1024).build();
+
+    private CachedItemSerializer(){
+
+    }
+
+    public static String serialize(ItemStack itemStack){
+        if(itemStack == null)
+            return "";
+
+        String serialized = serializedItems.getIfPresent(itemStack);
+
+        if(serialized == null){
+            serialized = plugin.getNMSAdapter().serialize(itemStack);
+            // Items are mutable, therefore a copy of the item is used as the key.
+            serializedItems.put(itemStack.clone(), serialized);
+        }
+
+        return serialized;
+    }
+
+    public static ItemStack deserialize(String serialized){
+        if(serialized == null || serialized.isEmpty())
+            return null;
+
+        ItemStack itemStack = deserializedItems.getIfPresent(serialized);
+
+        if(itemStack == null){
+            itemStack = plugin.getNMSAdapter().deserialize(serialized);
+            deserializedItems.put(serialized, itemStack.clone());
+            return itemStack;
+        }
+
+        return itemStack.clone();
+    }
+
+}
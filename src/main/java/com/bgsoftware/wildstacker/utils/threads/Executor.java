@@ -5,6 +5,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.bukkit.Bukkit;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -64,6 +65,13 @@ public final class Executor {
         dataService.execute(runnable);
     }
 
+    public static CompletableFuture<Void> dataFuture(Runnable runnable){
+        if(dataShutdown)
+            return CompletableFuture.completedFuture(null);
+
+        return CompletableFuture.runAsync(runnable, dataService);
+    }
+
     public static void stop(){
         shutdown = true;
     }
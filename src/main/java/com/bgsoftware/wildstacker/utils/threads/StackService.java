@@ -2,104 +2,242 @@ package com.bgsoftware.wildstacker.utils.threads;
 
 import com.bgsoftware.wildstacker.api.objects.StackedItem;
 import com.bgsoftware.wildstacker.api.objects.StackedObject;
-import com.google.common.collect.Maps;
+import com.bgsoftware.wildstacker.tasks.StackBudgetTask;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
 import org.bukkit.World;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// Stacking tasks are queued by the region of the object that is stacked, and all the regions are handled
+// by one shared pool of workers, so a busy world is spread across all cores and idle worlds have no threads.
+// Each cycle is split into four phases by the parity of the region coordinates. Regions of the same phase are
+// at least one region apart, so no two workers can ever touch the same objects as long as merge radiuses are
+// smaller than half a region. Larger merge radiuses are clamped when the config is loaded.
 @SuppressWarnings({"WeakerAccess", "BooleanMethodIsAlwaysInverted"})
 public final class StackService {
 
-    private static final Map<String, StackServiceWorld> stackServiceWorldMap = Maps.newConcurrentMap();
+    // Regions are 8x8 chunks.
+    public static final int REGION_SHIFT = 7;
+    public static final int MAX_MERGE_RADIUS = (1 << REGION_SHIFT) / 2 - 1;
+    private static final long CYCLE_INTERVAL = 250, BUSY_CYCLE_INTERVAL = 50;
+    // Cycles run more often when there are more pending tasks than this amount.
+    private static final int BUSY_QUEUED_TASKS = 1000;
+    // Periodic stacking stops queuing new tasks when there are more pending tasks than this limit.
+    private static final int MAX_QUEUED_TASKS = 10000;
+
+    private static final Map<RegionPosition, StackRegion> stackRegions = new ConcurrentHashMap<>();
+    private static final ThreadLocal<StackRegion> ownedRegion = new ThreadLocal<>();
+    private static final AtomicInteger queuedTasks = new AtomicInteger(0);
+
+    private static ScheduledExecutorService cycleExecutor;
+    private static ExecutorService workersExecutor;
+
+    static {
+        start();
+    }
 
     public static void execute(StackedObject stackedObject, Runnable runnable){
-        execute(stackedObject.getWorld(), StackType.fromObject(stackedObject), runnable);
+        execute(stackedObject.getLocation(), StackType.fromObject(stackedObject), runnable);
     }
 
     public static void execute(World world, StackType stackType, Runnable runnable){
-        if(isStackThread()) {
+        execute(world.getSpawnLocation(), stackType, runnable);
+    }
+
+    public static void execute(Location location, StackType stackType, Runnable runnable){
+        RegionPosition regionPosition = new RegionPosition(location.getWorld().getName(), stackType,
+                location.getBlockX() >> REGION_SHIFT, location.getBlockZ() >> REGION_SHIFT);
+
+        // Tasks of other regions are queued, as their objects may be owned by other workers right now.
+        StackRegion currentRegion = ownedRegion.get();
+        if(currentRegion != null && currentRegion.position.equals(regionPosition)) {
             runnable.run();
             return;
         }
 
-        stackServiceWorldMap.computeIfAbsent(world.getName(), stackServiceWorld -> new StackServiceWorld(world.getName())).add(stackType, runnable);
+        stackRegions.compute(regionPosition, (position, stackRegion) -> {
+            if(stackRegion == null)
+                stackRegion = new StackRegion(position);
+            stackRegion.tasks.add(runnable);
+            return stackRegion;
+        });
+
+        queuedTasks.incrementAndGet();
     }
 
     public static void restart(World world){
-        StackServiceWorld stackServiceWorld = stackServiceWorldMap.get(world.getName());
-        if(stackServiceWorld != null)
-            stackServiceWorld.stop();
-        stackServiceWorldMap.put(world.getName(), new StackServiceWorld(world.getName()));
+        stackRegions.values().removeIf(stackRegion -> {
+            if(!stackRegion.position.world.equals(world.getName()))
+                return false;
+            queuedTasks.addAndGet(-stackRegion.tasks.size());
+            return true;
+        });
+        stopExecutors();
+        start();
     }
 
     public static boolean isStackThread(){
-        long threadId = Thread.currentThread().getId();
-        return stackServiceWorldMap.values().stream().anyMatch(stackServiceWorld -> stackServiceWorld.taskId[0] == threadId || stackServiceWorld.taskId[1] == threadId);
+        return ownedRegion.get() != null;
     }
 
     public static boolean canStackFromThread(){
         return isStackThread() || Bukkit.isPrimaryThread();
     }
 
+    public static boolean isOverloaded(){
+        return queuedTasks.get() >= MAX_QUEUED_TASKS;
+    }
+
     public static void stop(){
-        stackServiceWorldMap.values().forEach(StackServiceWorld::stop);
-        stackServiceWorldMap.clear();
+        stopExecutors();
+        stackRegions.clear();
+        queuedTasks.set(0);
     }
 
-    private static final class StackServiceWorld {
+    private static synchronized void start(){
+        AtomicInteger workerId = new AtomicInteger(0);
+        // One core is left for the main thread.
+        int workersAmount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+        workersExecutor = Executors.newFixedThreadPool(workersAmount, runnable -> {
+            Thread thread = new Thread(runnable, "WildStacker Stacking Thread #" + workerId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        @SuppressWarnings("unchecked")
-        private final Queue<Runnable>[] asyncRunnables = new ConcurrentLinkedQueue[2];
-        private final long[] taskId = new long[] {-1, -1};
-        private final Timer[] timers = new Timer[2];
+        cycleExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "WildStacker Stacking Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        StackServiceWorld(String world){
-            for(StackType stackType : StackType.values())
-                timers[stackType.id] = startNewTimer(world, stackType);
+        scheduleCycle(cycleExecutor, workersExecutor);
+    }
+
+    private static void scheduleCycle(ScheduledExecutorService cycleExecutor, ExecutorService workersExecutor){
+        // Stacking catches up faster while many tasks are waiting, unless the server is already lagging.
+        long interval = queuedTasks.get() >= BUSY_QUEUED_TASKS && StackBudgetTask.isServerHealthy() ?
+                BUSY_CYCLE_INTERVAL : CYCLE_INTERVAL;
+
+        try {
+            cycleExecutor.schedule(() -> {
+                runCycle(workersExecutor);
+                scheduleCycle(cycleExecutor, workersExecutor);
+            }, interval, TimeUnit.MILLISECONDS);
+        }catch(RejectedExecutionException ignored){
+            // The executor was stopped.
         }
+    }
 
-        private Timer startNewTimer(String world, StackType type){
-            Timer timer = new Timer(true);
-            asyncRunnables[type.id] = new ConcurrentLinkedQueue<>();
+    private static synchronized void stopExecutors(){
+        cycleExecutor.shutdownNow();
+        workersExecutor.shutdownNow();
+    }
 
-            timer.scheduleAtFixedRate(new TimerTask() {
-                @Override
-                public void run() {
-                    try {
-                        if (taskId[type.id] == -1) {
-                            Thread.currentThread().setName("WildStacker " + type + " Stacking Thread (" + world + ")");
-                            taskId[type.id] = Thread.currentThread().getId();
-                        }
+    private static void runCycle(ExecutorService workersExecutor){
+        try {
+            for (int phase = 0; phase < 4; phase++) {
+                List<Callable<Void>> phaseTasks = new ArrayList<>();
 
-                        List<Runnable> runnableList = new ArrayList<>(asyncRunnables[type.id]);
-                        asyncRunnables[type.id].clear();
+                for (StackRegion stackRegion : stackRegions.values()) {
+                    if (stackRegion.position.getPhase() == phase && !stackRegion.tasks.isEmpty())
+                        phaseTasks.add(stackRegion);
+                }
+
+                // The next phase must not start before all the regions of this phase are done.
+                if (!phaseTasks.isEmpty())
+                    workersExecutor.invokeAll(phaseTasks);
+            }
+
+            // Regions are only removed while they are empty, so tasks that are added meanwhile are never lost.
+            for (RegionPosition regionPosition : stackRegions.keySet())
+                stackRegions.computeIfPresent(regionPosition, (position, stackRegion) -> stackRegion.tasks.isEmpty() ? null : stackRegion);
+        }catch (InterruptedException ignored){
+        }catch(Exception ex){
+            ex.printStackTrace();
+        }
+    }
 
-                        runnableList.forEach(Runnable::run);
-                    }catch(Exception ex){
+    private static final class StackRegion implements Callable<Void> {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final RegionPosition position;
+
+        StackRegion(RegionPosition position){
+            this.position = position;
+        }
+
+        @Override
+        public Void call() {
+            ownedRegion.set(this);
+
+            try {
+                // Only tasks that were queued before the region started are handled, the rest wait for the next cycle.
+                for (int amount = tasks.size(); amount > 0; amount--) {
+                    Runnable runnable = tasks.poll();
+
+                    if (runnable == null)
+                        break;
+
+                    queuedTasks.decrementAndGet();
+
+                    try {
+                        runnable.run();
+                    } catch (Exception ex) {
                         ex.printStackTrace();
                     }
                 }
-            }, 250, 250);
+            } finally {
+                ownedRegion.remove();
+            }
 
-            return timer;
+            return null;
         }
 
-        void add(StackType type, Runnable runnable){
-            asyncRunnables[type.id].add(runnable);
+    }
+
+    private static final class RegionPosition {
+
+        private final String world;
+        private final StackType stackType;
+        private final int x, z;
+
+        RegionPosition(String world, StackType stackType, int x, int z){
+            this.world = world;
+            this.stackType = stackType;
+            this.x = x;
+            this.z = z;
         }
 
-        void stop(){
-            for(int i = 0; i < 2; i++) {
-                timers[i].cancel();
-                asyncRunnables[i].clear();
-            }
+        int getPhase(){
+            return ((x & 1) << 1) | (z & 1);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RegionPosition that = (RegionPosition) o;
+            return x == that.x && z == that.z && stackType == that.stackType && world.equals(that.world);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(world, stackType, x, z);
         }
 
     }
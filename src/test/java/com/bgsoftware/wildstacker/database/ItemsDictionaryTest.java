@@ -0,0 +1,109 @@
+package com.bgsoftware.wildstacker.database;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public final class ItemsDictionaryTest {
+
+    private static final String[] MATERIALS = new String[] {
+            "minecraft:diamond_sword", "minecraft:cobblestone", "minecraft:spawner", "minecraft:golden_apple",
+            "minecraft:enchanted_book", "minecraft:iron_ingot", "minecraft:player_head", "minecraft:potion"
+    };
+
+    @Test
+    public void serializedItemsSurviveRoundTrip() throws IOException {
+        Random random = new Random(1000);
+
+        for(int i = 0; i < 1000; i++){
+            byte[] itemData = createItemData(random);
+            String serializedItem = serialize(itemData);
+
+            byte[] savedData = ItemsDictionary.toBytes(serializedItem);
+            String loadedItem = ItemsDictionary.fromBytes(savedData);
+
+            assertEquals("Item " + i + " was changed by saving it", serializedItem, loadedItem);
+            assertArrayEquals("Item " + i + " can't be deserialized after loading it", itemData, deserialize(loadedItem));
+        }
+    }
+
+    @Test
+    public void savedBytesAreTheItemData() throws IOException {
+        Random random = new Random(2000);
+
+        for(int i = 0; i < 100; i++){
+            byte[] itemData = createItemData(random);
+            assertArrayEquals(itemData, ItemsDictionary.toBytes(serialize(itemData)));
+        }
+    }
+
+    // Items are serialized by the NMS adapters as compressed NBT compounds, written in base 32.
+    private static String serialize(byte[] itemData){
+        return new BigInteger(1, itemData).toString(32);
+    }
+
+    private static byte[] deserialize(String serializedItem){
+        return new BigInteger(serializedItem, 32).toByteArray();
+    }
+
+    private static byte[] createItemData(Random random) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        try(DataOutputStream dataOutput = new DataOutputStream(new GZIPOutputStream(outputStream))){
+            // Root compound
+            dataOutput.writeByte(10);
+            dataOutput.writeUTF("");
+
+            writeString(dataOutput, "id", MATERIALS[random.nextInt(MATERIALS.length)]);
+
+            dataOutput.writeByte(1);
+            dataOutput.writeUTF("Count");
+            dataOutput.writeByte(1 + random.nextInt(64));
+
+            if(random.nextBoolean()){
+                dataOutput.writeByte(10);
+                dataOutput.writeUTF("tag");
+
+                dataOutput.writeByte(10);
+                dataOutput.writeUTF("display");
+                writeString(dataOutput, "Name", "{\"text\":\"Item #" + random.nextInt() + "\"}");
+                dataOutput.writeByte(0);
+
+                dataOutput.writeByte(3);
+                dataOutput.writeUTF("Damage");
+                dataOutput.writeInt(random.nextInt(1562));
+
+                dataOutput.writeByte(0);
+            }
+
+            dataOutput.writeByte(0);
+        }
+
+        byte[] itemData = outputStream.toByteArray();
+
+        // Making sure the data is a valid compressed stream, as the NMS adapters expect.
+        try(InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(itemData))){
+            while(inputStream.read() != -1);
+        }
+
+        return itemData;
+    }
+
+    private static void writeString(DataOutputStream dataOutput, String name, String value) throws IOException {
+        dataOutput.writeByte(8);
+        dataOutput.writeUTF(name);
+        dataOutput.writeUTF(value);
+    }
+
+}
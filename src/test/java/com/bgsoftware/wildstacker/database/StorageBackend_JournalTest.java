@@ -0,0 +1,166 @@
+package com.bgsoftware.wildstacker.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class StorageBackend_JournalTest {
+
+    private File journalFolder;
+    private final List<StorageBackend_Journal> openedJournals = new ArrayList<>();
+
+    @Before
+    public void createFolder() throws IOException {
+        journalFolder = Files.createTempDirectory("journal").toFile();
+    }
+
+    @After
+    public void deleteFolder(){
+        openedJournals.forEach(StorageBackend_Journal::close);
+
+        File[] files = journalFolder.listFiles();
+        if(files != null)
+            Arrays.stream(files).forEach(File::delete);
+
+        journalFolder.delete();
+    }
+
+    @Test
+    public void recordsAreReplayedAfterRestart() throws IOException {
+        StorageBackend_Journal journal = openJournal();
+
+        journal.onSpawnersUpdate(Arrays.asList(spawner("world", 10, 64, -20, 5, 1),
+                spawner("world_nether", -30000000, -64, 29999999, 64, 0)), Collections.emptyList());
+        journal.onBarrelsUpdate(Collections.singletonList(barrel("world", 1, 2, 3, 100, "item")), Collections.emptyList());
+        // Newer records of the same position replace the older ones.
+        journal.onSpawnersUpdate(Collections.singletonList(spawner("world", 10, 64, -20, 7, 2)), Collections.emptyList());
+        journal.close();
+
+        StorageBackend_Journal replayedJournal = openJournal();
+
+        assertEquals(Arrays.asList("world 10 64 -20 7 2 ", "world_nether -30000000 -64 29999999 64 0 "),
+                getObjects(replayedJournal.spawners));
+        assertEquals(Collections.singletonList("world 1 2 3 100 0 item"), getObjects(replayedJournal.barrels));
+    }
+
+    @Test
+    public void deletedObjectsAreNotReplayed() throws IOException {
+        StorageBackend_Journal journal = openJournal();
+
+        journal.onSpawnersUpdate(Arrays.asList(spawner("world", 0, 0, 0, 2, 0), spawner("world", 16, 0, 16, 3, 0)),
+                Collections.emptyList());
+        journal.onBarrelsUpdate(Collections.singletonList(barrel("world", 5, 5, 5, 10, "item")), Collections.emptyList());
+        journal.onSpawnersUpdate(Collections.emptyList(), Collections.singletonList(spawner("world", 0, 0, 0, 2, 0)));
+        journal.onBarrelsUpdate(Collections.emptyList(), Collections.singletonList(barrel("world", 5, 5, 5, 10, "item")));
+        journal.close();
+
+        StorageBackend_Journal replayedJournal = openJournal();
+
+        assertEquals(Collections.singletonList("world 16 0 16 3 0 "), getObjects(replayedJournal.spawners));
+        assertTrue(getObjects(replayedJournal.barrels).isEmpty());
+    }
+
+    @Test
+    public void compactionKeepsAllObjects() throws IOException {
+        StorageBackend_Journal journal = openJournal();
+        journal.onSpawnersUpdate(Collections.singletonList(spawner("world", 1, 1, 1, 4, 0)), Collections.emptyList());
+        journal.onBarrelsUpdate(Collections.singletonList(barrel("world_the_end", 2, 2, 2, 8, "first")), Collections.emptyList());
+        journal.close();
+
+        // The first journal was replayed, and the records of this session are written into the second one.
+        StorageBackend_Journal compactedJournal = openJournal();
+        assertEquals(2, compactedJournal.compact(1));
+        assertFalse(new File(journalFolder, "journal-1.log").exists());
+        assertTrue(new File(journalFolder, "snapshot.dat").exists());
+
+        compactedJournal.onSpawnersUpdate(Collections.singletonList(spawner("world", 1, 1, 1, 6, 0)), Collections.emptyList());
+        compactedJournal.onBarrelsUpdate(Collections.singletonList(barrel("world_the_end", 3, 3, 3, 9, "second")),
+                Collections.emptyList());
+        compactedJournal.close();
+
+        StorageBackend_Journal replayedJournal = openJournal();
+
+        assertEquals(Collections.singletonList("world 1 1 1 6 0 "), getObjects(replayedJournal.spawners));
+        assertEquals(Arrays.asList("world_the_end 2 2 2 8 0 first", "world_the_end 3 3 3 9 0 second"),
+                getObjects(replayedJournal.barrels));
+    }
+
+    @Test
+    public void tornRecordsAreIgnored() throws IOException {
+        StorageBackend_Journal journal = openJournal();
+        journal.onSpawnersUpdate(Collections.singletonList(spawner("world", 1, 1, 1, 4, 0)), Collections.emptyList());
+        journal.onSpawnersUpdate(Collections.singletonList(spawner("world", 2, 2, 2, 5, 0)), Collections.emptyList());
+        journal.close();
+
+        // Corrupting the last byte of the last record, as if the server stopped while writing it.
+        File journalFile = new File(journalFolder, "journal-1.log");
+        try(RandomAccessFile file = new RandomAccessFile(journalFile, "rw")){
+            long lastByte = findJournalEnd(file) - 1;
+            file.seek(lastByte);
+            int value = file.read();
+            file.seek(lastByte);
+            file.write(value ^ 0xFF);
+        }
+
+        StorageBackend_Journal replayedJournal = openJournal();
+
+        assertEquals(Collections.singletonList("world 1 1 1 4 0 "), getObjects(replayedJournal.spawners));
+    }
+
+    private StorageBackend_Journal openJournal() throws IOException {
+        StorageBackend_Journal journal = new StorageBackend_Journal();
+        journal.open(journalFolder);
+        openedJournals.add(journal);
+        return journal;
+    }
+
+    private static long findJournalEnd(RandomAccessFile file) throws IOException {
+        long position = 0;
+        int recordLength;
+
+        while((recordLength = file.readInt()) > 0){
+            position += 8 + recordLength;
+            file.seek(position);
+        }
+
+        return position;
+    }
+
+    private static CachedStorageBackend.StoredObject spawner(String world, int x, int y, int z, int stackAmount, int upgradeId){
+        return new CachedStorageBackend.StoredObject(world, x, y, z, stackAmount, upgradeId, null);
+    }
+
+    private static CachedStorageBackend.StoredObject barrel(String world, int x, int y, int z, int stackAmount, String item){
+        return new CachedStorageBackend.StoredObject(world, x, y, z, stackAmount, 0, item);
+    }
+
+    private static List<String> getObjects(Map<?, Map<Long, CachedStorageBackend.StoredObject>> objects){
+        List<String> storedObjects = new ArrayList<>();
+
+        for(Map<Long, CachedStorageBackend.StoredObject> chunkObjects : objects.values()){
+            for(CachedStorageBackend.StoredObject storedObject : chunkObjects.values()) {
+                storedObjects.add(storedObject.world + " " + storedObject.x + " " + storedObject.y + " " + storedObject.z + " " +
+                        storedObject.stackAmount + " " + storedObject.upgradeId + " " + storedObject.item);
+            }
+        }
+
+        Collections.sort(storedObjects);
+
+        return storedObjects;
+    }
+
+}
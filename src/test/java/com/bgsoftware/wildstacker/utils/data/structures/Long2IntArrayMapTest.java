@@ -0,0 +1,94 @@
+package com.bgsoftware.wildstacker.utils.data.structures;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class Long2IntArrayMapTest {
+
+    @Test
+    public void removedKeysAreGone(){
+        Long2IntArrayMap map = new Long2IntArrayMap();
+        int[] value = new int[] {1, 2};
+
+        map.put(5L, value);
+
+        assertSame(value, map.remove(5L));
+        assertNull(map.remove(5L));
+        assertNull(map.get(5L));
+        assertFalse(map.containsKey(5L));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void keysAfterRemovedSlotsAreStillFound(){
+        // A small map, so most of the keys share probe chains and some of them wrap around the end of the table.
+        Long2IntArrayMap map = new Long2IntArrayMap(4);
+        List<Long> keys = new ArrayList<>();
+
+        for(long key = 0; key < 4; key++){
+            map.put(key, new int[] {(int) key});
+            keys.add(key);
+        }
+
+        for(long removedKey = 0; removedKey < 4; removedKey++){
+            map.remove(removedKey);
+            keys.remove(removedKey);
+
+            for(long key : keys)
+                assertArrayEquals("Key " + key + " was lost after removing " + removedKey,
+                        new int[] {(int) key}, map.get(key));
+        }
+
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void randomOperationsMatchHashMap(){
+        Random random = new Random(1000);
+        Long2IntArrayMap map = new Long2IntArrayMap();
+        Map<Long, int[]> expected = new HashMap<>();
+
+        for(int i = 0; i < 100000; i++){
+            // Chunk keys of a small area, so the same keys are added and removed over and over.
+            long key = chunkKey(random.nextInt(32) - 16, random.nextInt(32) - 16);
+
+            if(random.nextInt(3) == 0){
+                assertSame(expected.remove(key), map.remove(key));
+            }
+            else{
+                int[] value = new int[] {i};
+                assertSame(expected.put(key, value), map.put(key, value));
+            }
+
+            assertEquals(expected.size(), map.size());
+        }
+
+        for(Map.Entry<Long, int[]> entry : expected.entrySet())
+            assertSame(entry.getValue(), map.get(entry.getKey()));
+
+        int[] visitedEntries = new int[1];
+        map.forEach((key, value) -> {
+            assertSame(expected.get(key), value);
+            visitedEntries[0]++;
+        });
+
+        assertEquals(expected.size(), visitedEntries[0]);
+    }
+
+    private static long chunkKey(int x, int z){
+        return (long) x << 32 | (z & 0xFFFFFFFFL);
+    }
+
+}
@@ -444,6 +444,24 @@ public final class NMSAdapter_v1_16_R2 implements NMSAdapter {
         return entity.getPersistentDataContainer();
     }
 
+    @Override
+    public boolean isChunkDataSupported() {
+        return true;
+    }
+
+    @Override
+    public byte[] getChunkData(org.bukkit.Chunk chunk, String key) {
+        return chunk.getPersistentDataContainer().get(new NamespacedKey(plugin, key), PersistentDataType.BYTE_ARRAY);
+    }
+
+    @Override
+    public void setChunkData(org.bukkit.Chunk chunk, String key, byte[] data) {
+        if(data == null)
+            chunk.getPersistentDataContainer().remove(new NamespacedKey(plugin, key));
+        else
+            chunk.getPersistentDataContainer().set(new NamespacedKey(plugin, key), PersistentDataType.BYTE_ARRAY, data);
+    }
+
     @Override
     public boolean handleTotemOfUndying(LivingEntity livingEntity) {
         EntityLiving entityLiving = ((CraftLivingEntity) livingEntity).getHandle();